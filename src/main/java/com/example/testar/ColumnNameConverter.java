@@ -0,0 +1,208 @@
+package com.example.testar;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * 按词法单元转换表达式中的列名（下划线/驼峰互转）
+ * 只转换列引用，以下内容保持原样：
+ * 关键字（AND、IS NULL等）、函数名、字符串常量、带引号的标识符、注释、
+ * 别名（AS之后或表达式后直接跟的标识符）、表别名/库名前缀、类型名（::之后）、
+ * 绑定参数（:name、#{name}、${name}）、子查询占位符
+ */
+final class ColumnNameConverter {
+
+    private ColumnNameConverter() {
+    }
+
+    static String convert(String expression, Function<String, String> converter) {
+        return convert(expression, converter, Collections.emptySet(), Collections.emptyMap());
+    }
+
+    /**
+     * 转换表达式中的列名，同时改写表名映射后失效的限定名
+     * @param expression SELECT字段、WHERE/ON/GROUP BY/HAVING/ORDER BY子句
+     * @param converter 单个列名的转换
+     * @param aliases 语句中定义的别名（小写），引用别名的地方不转换，如 ORDER BY total_amount
+     * @param renames 限定名改写（旧限定名小写 -> 新表名），如 t_agency.agency_id -> bas.t_agency.agencyId
+     */
+    static String convert(String expression, Function<String, String> converter, Set<String> aliases,
+                          Map<String, String> renames) {
+        return convert(expression, converter, aliases, Collections.emptySet(), renames);
+    }
+
+    /**
+     * 同上，带限定名的引用只有限定名在derivedQualifiers中时才可能引用别名
+     * @param derivedQualifiers 引用派生表或CTE的限定名（小写），其余限定名引用基表，列名总是转换
+     */
+    static String convert(String expression, Function<String, String> converter, Set<String> aliases,
+                          Set<String> derivedQualifiers, Map<String, String> renames) {
+        return scan(expression, converter, aliases, derivedQualifiers, renames, null);
+    }
+
+    /**
+     * 收集SELECT字段中定义的别名（小写）
+     */
+    static void collectAliases(String fieldExpression, Set<String> aliases) {
+        scan(fieldExpression, Function.identity(), Collections.emptySet(), Collections.emptySet(),
+                Collections.emptyMap(), aliases);
+    }
+
+    private static String scan(String expression, Function<String, String> converter, Set<String> preserved,
+                               Set<String> derivedQualifiers, Map<String, String> renames, Set<String> aliasSink) {
+        if (expression == null || expression.isEmpty()) {
+            return expression;
+        }
+        StringBuilder result = new StringBuilder(expression.length() + 8);
+        // 前一个词法单元是否为完整的操作数，之后紧跟的标识符是别名
+        boolean afterOperand = false;
+        // AS 或 :: 之后的标识符不是列名
+        boolean skipNextName = false;
+        // scanNameChain记录的最后一个 . 的位置，不回头查找，整个表达式只扫描一遍
+        int[] lastDot = new int[1];
+        int length = expression.length();
+        int i = 0;
+        while (i < length) {
+            char c = expression.charAt(i);
+            int end;
+            if (Character.isWhitespace(c)) {
+                result.append(c);
+                i++;
+                continue;
+            } else if (c == '\'') {
+                end = SqlScanner.skipQuoted(expression, i) + 1;
+                afterOperand = true;
+            } else if (c == '"' || c == '`') {
+                end = SqlScanner.skipQuoted(expression, i) + 1;
+                if (aliasSink != null && (skipNextName || afterOperand)) {
+                    aliasSink.add(expression.substring(i + 1, end - 1).toLowerCase());
+                }
+                afterOperand = !skipNextName;
+                skipNextName = false;
+            } else if (c == '-' && startsWith(expression, i, "--")) {
+                end = expression.indexOf('\n', i);
+                end = end == -1 ? length : end;
+            } else if (c == '/' && startsWith(expression, i, "/*")) {
+                end = expression.indexOf("*/", i + 2);
+                end = end == -1 ? length : end + 2;
+            } else if ((c == '#' || c == '$') && startsWith(expression, i + 1, "{")) {
+                end = expression.indexOf('}', i);
+                end = end == -1 ? length : end + 1;
+                afterOperand = true;
+            } else if (c == ':' && startsWith(expression, i, "::")) {
+                end = i + 2;
+                skipNextName = true;
+                afterOperand = false;
+            } else if (c == ':' && i + 1 < length && SqlScanner.isWordChar(expression.charAt(i + 1))) {
+                end = SqlScanner.scanWord(expression, i + 1);
+                afterOperand = true;
+            } else if (c == SqlFactory.SUBQUERY_MARK) {
+                end = expression.indexOf(SqlFactory.SUBQUERY_MARK, i + 1) + 1;
+                afterOperand = true;
+            } else if (Character.isDigit(c)) {
+                end = scanNumber(expression, i);
+                afterOperand = true;
+            } else if (Character.isLetter(c) || c == '_') {
+                end = scanNameChain(expression, i, lastDot);
+                int next = SqlScanner.skipSpaces(expression, end);
+                boolean qualifierOnly = next < length && expression.charAt(next) == '.';
+                boolean functionCall = next < length && expression.charAt(next) == '('
+                        && !startsWith(expression, next, "(+)");
+                boolean singleWord = lastDot[0] == -1;
+                if (singleWord && SqlKeywords.isKeyword(expression, i, end)) {
+                    skipNextName = SqlScanner.matchKeyword(expression, i, "AS") == end;
+                    afterOperand = SqlScanner.matchKeyword(expression, i, "END") == end;
+                } else if (qualifierOnly) {
+                    // t.* 中的 t
+                    appendQualifier(result, expression, i, end, renames);
+                    afterOperand = false;
+                    i = end;
+                    continue;
+                } else if (functionCall) {
+                    afterOperand = false;
+                } else if (skipNextName || (afterOperand && singleWord)) {
+                    // 别名或类型名
+                    if (aliasSink != null) {
+                        aliasSink.add(expression.substring(i, end).toLowerCase());
+                    }
+                    skipNextName = false;
+                    afterOperand = true;
+                } else {
+                    appendConverted(result, expression, i, lastDot[0], end, converter, preserved,
+                            derivedQualifiers, renames);
+                    afterOperand = true;
+                    i = end;
+                    continue;
+                }
+            } else {
+                end = i + 1;
+                afterOperand = c == ')';
+                skipNextName = false;
+            }
+            result.append(expression, i, end);
+            i = end;
+        }
+        return result.toString();
+    }
+
+    // 带前缀的列名只转换最后一段，如 t.user_name 中的 user_name
+    private static void appendConverted(StringBuilder result, String expression, int start, int lastDot, int end,
+                                        Function<String, String> converter, Set<String> preserved,
+                                        Set<String> derivedQualifiers, Map<String, String> renames) {
+        int nameStart = start;
+        if (lastDot != -1) {
+            appendQualifier(result, expression, start, lastDot, renames);
+            result.append('.');
+            nameStart = lastDot + 1;
+        }
+        String name = expression.substring(nameStart, end);
+        // 不带前缀的名称和派生表、CTE的列可能引用列别名；u.user_name 这类基表的列总是转换
+        boolean alias = !preserved.isEmpty() && preserved.contains(name.toLowerCase())
+                && (lastDot == -1 || derivedQualifiers.contains(expression.substring(start, lastDot).toLowerCase()));
+        result.append(alias ? name : converter.apply(name));
+    }
+
+    private static void appendQualifier(StringBuilder result, String expression, int start, int end,
+                                        Map<String, String> renames) {
+        String newQualifier = renames.isEmpty() ? null : renames.get(expression.substring(start, end).toLowerCase());
+        if (newQualifier != null) {
+            result.append(newQualifier);
+        } else {
+            result.append(expression, start, end);
+        }
+    }
+
+    // 标识符及其限定前缀，如 db.t.col，lastDot[0]记录最后一个 . 的位置，没有前缀时为-1
+    private static int scanNameChain(String text, int pos, int[] lastDot) {
+        lastDot[0] = -1;
+        int end = SqlScanner.scanWord(text, pos);
+        while (end + 1 < text.length() && text.charAt(end) == '.'
+                && (Character.isLetter(text.charAt(end + 1)) || text.charAt(end + 1) == '_')) {
+            lastDot[0] = end;
+            end = SqlScanner.scanWord(text, end + 1);
+        }
+        return end;
+    }
+
+    // 数字常量，包括小数和科学计数法
+    private static int scanNumber(String text, int pos) {
+        int end = pos;
+        while (end < text.length()) {
+            char c = text.charAt(end);
+            if (SqlScanner.isWordChar(c) || c == '.') {
+                end++;
+            } else if ((c == '+' || c == '-') && (text.charAt(end - 1) == 'e' || text.charAt(end - 1) == 'E')) {
+                end++;
+            } else {
+                break;
+            }
+        }
+        return end;
+    }
+
+    private static boolean startsWith(String text, int pos, String prefix) {
+        return text.startsWith(prefix, pos);
+    }
+}
@@ -0,0 +1,94 @@
+package com.example.testar;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.ToLongFunction;
+
+/**
+ * 分页总数缓存：按查询指纹缓存COUNT结果，过期后重新统计
+ * 超过容量时淘汰最久未使用的条目
+ */
+public class CountCache {
+
+    private final long ttlMillis;
+    private final Map<String, Entry> entries;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public CountCache(long ttl, TimeUnit unit, final int maxEntries) {
+        this.ttlMillis = unit.toMillis(ttl);
+        this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * 取缓存的总数，未命中或已过期时调用loader统计
+     * @param fingerprint 查询指纹
+     * @param loader 统计总数，参数为查询指纹
+     * @return 总数
+     */
+    public long getOrLoad(String fingerprint, ToLongFunction<String> loader) {
+        long now = System.currentTimeMillis();
+        synchronized (entries) {
+            Entry entry = entries.get(fingerprint);
+            if (entry != null && entry.expireAt > now) {
+                hits.incrementAndGet();
+                return entry.total;
+            }
+        }
+
+        // 统计放在锁外执行，避免慢查询阻塞其他请求
+        misses.incrementAndGet();
+        long total = loader.applyAsLong(fingerprint);
+        synchronized (entries) {
+            entries.put(fingerprint, new Entry(total, System.currentTimeMillis() + ttlMillis));
+        }
+        return total;
+    }
+
+    /**
+     * 数据变更后主动失效
+     * @param fingerprint 查询指纹
+     */
+    public void invalidate(String fingerprint) {
+        synchronized (entries) {
+            entries.remove(fingerprint);
+        }
+    }
+
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    private static class Entry {
+        private final long total;
+        private final long expireAt;
+
+        private Entry(long total, long expireAt) {
+            this.total = total;
+            this.expireAt = expireAt;
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.example.testar;
+
+import org.springframework.boot.context.TypeExcludeFilter;
+import org.springframework.core.type.classreading.MetadataReader;
+import org.springframework.core.type.classreading.MetadataReaderFactory;
+
+/**
+ * 精简启动时不扫描demos包下的示例控制器
+ * 由 {@link TestarApplication} 在精简模式下注册为单例，Spring Boot的TypeExcludeFilter在组件扫描时调用它
+ */
+final class DemoExcludeFilter extends TypeExcludeFilter {
+
+    private static final String DEMO_PACKAGE = "com.example.testar.demos.";
+
+    @Override
+    public boolean match(MetadataReader metadataReader, MetadataReaderFactory metadataReaderFactory) {
+        return metadataReader.getClassMetadata().getClassName().startsWith(DEMO_PACKAGE);
+    }
+
+    // 测试上下文缓存按过滤器比较，同类实例视为相同
+    @Override
+    public boolean equals(Object o) {
+        return o != null && o.getClass() == getClass();
+    }
+
+    @Override
+    public int hashCode() {
+        return getClass().hashCode();
+    }
+}
@@ -0,0 +1,24 @@
+package com.example.testar;
+
+// 分页类
+class Page {
+    private String pageNumber;
+    private String pageSize;
+    
+    // Getters and Setters
+    public String getPageNumber() {
+        return pageNumber;
+    }
+    
+    public void setPageNumber(String pageNumber) {
+        this.pageNumber = pageNumber;
+    }
+    
+    public String getPageSize() {
+        return pageSize;
+    }
+    
+    public void setPageSize(String pageSize) {
+        this.pageSize = pageSize;
+    }
+}
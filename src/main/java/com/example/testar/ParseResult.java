@@ -0,0 +1,67 @@
+package com.example.testar;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 一次 {@link SqlFactory#fromSql(String)} 的解析结果
+ * 无法解析的语句或子查询不会中断处理，而是原样输出（透传），其余部分照常转换
+ */
+public final class ParseResult {
+
+    public enum Status {
+        // 全部解析成功
+        PARSED,
+        // 最外层语句解析成功，部分子查询、CTE或集合运算分支原样输出
+        PARTIAL,
+        // 最外层语句解析失败，整条SQL原样输出
+        FAILED,
+        // 不支持的语句类型，未解析直接原样输出
+        UNSUPPORTED
+    }
+
+    static final ParseResult EMPTY = new ParseResult(Status.PARSED, null, Collections.emptyList());
+
+    private final Status status;
+    private final String statementType;
+    private final List<SqlParseException> errors;
+
+    ParseResult(Status status, String statementType, List<SqlParseException> errors) {
+        this.status = status;
+        this.statementType = statementType;
+        this.errors = errors.isEmpty() ? Collections.emptyList() : Collections.unmodifiableList(errors);
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public boolean isSuccess() {
+        return status == Status.PARSED;
+    }
+
+    // 语句类型：SELECT、INSERT、UPDATE、DELETE、WITH，不支持的语句为null
+    public String getStatementType() {
+        return statementType;
+    }
+
+    // 按出现顺序记录的解析错误，位置为在完整SQL中的偏移
+    public List<SqlParseException> getErrors() {
+        return errors;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder result = new StringBuilder(status.name());
+        if (statementType != null) {
+            result.append(' ').append(statementType);
+        }
+        for (SqlParseException error : errors) {
+            result.append("; ").append(error.getMessage());
+            if (error.getPosition() >= 0) {
+                result.append(" @").append(error.getPosition());
+            }
+        }
+        return result.toString();
+    }
+}
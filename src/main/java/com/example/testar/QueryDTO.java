@@ -0,0 +1,45 @@
+package com.example.testar;
+
+import java.util.List;
+import java.util.Map;
+
+// 查询DTO类
+class QueryDTO {
+    private Page page;
+    private List<String> fieldNames;
+    private List<Map<String, Object>> whereSql;
+    private String isRelatedSubTable;
+    
+    // Getters and Setters
+    public Page getPage() {
+        return page;
+    }
+    
+    public void setPage(Page page) {
+        this.page = page;
+    }
+    
+    public List<String> getFieldNames() {
+        return fieldNames;
+    }
+    
+    public void setFieldNames(List<String> fieldNames) {
+        this.fieldNames = fieldNames;
+    }
+    
+    public List<Map<String, Object>> getWhereSql() {
+        return whereSql;
+    }
+    
+    public void setWhereSql(List<Map<String, Object>> whereSql) {
+        this.whereSql = whereSql;
+    }
+    
+    public String getIsRelatedSubTable() {
+        return isRelatedSubTable;
+    }
+    
+    public void setIsRelatedSubTable(String isRelatedSubTable) {
+        this.isRelatedSubTable = isRelatedSubTable;
+    }
+}
@@ -0,0 +1,33 @@
+package com.example.testar;
+
+// RestBody主类
+class RestBody {
+    private String fiscalYear;
+    private String mofDivCode;
+    private QueryDTO queryDTO;
+    
+    // Getters and Setters
+    public String getFiscalYear() {
+        return fiscalYear;
+    }
+    
+    public void setFiscalYear(String fiscalYear) {
+        this.fiscalYear = fiscalYear;
+    }
+    
+    public String getMofDivCode() {
+        return mofDivCode;
+    }
+    
+    public void setMofDivCode(String mofDivCode) {
+        this.mofDivCode = mofDivCode;
+    }
+    
+    public QueryDTO getQueryDTO() {
+        return queryDTO;
+    }
+    
+    public void setQueryDTO(QueryDTO queryDTO) {
+        this.queryDTO = queryDTO;
+    }
+}
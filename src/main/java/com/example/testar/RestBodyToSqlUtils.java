@@ -1,190 +1,712 @@
 package com.example.testar;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.Year;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.format.ResolverStyle;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToLongFunction;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
-// RestBody主类
-class RestBody {
-    private String fiscalYear;
-    private String mofDivCode;
-    private QueryDTO queryDTO;
+// 列类型，决定条件值渲染成哪种字面量
+enum ColumnType {
+    STRING,
+    NUMBER,
+    DATE,
+    TIMESTAMP
+}
+
+// 表结构信息，提供列类型等元数据
+class TableSchema {
+    private String tableName;
+    private final Map<String, ColumnType> columnTypes = new HashMap<>();
+    private final List<SubTableRelation> subTables = new ArrayList<>();
+    // 表按fiscal_year分区、mof_div_code子分区时开启，强制带上分区键条件
+    private boolean partitionAware;
     
-    // Getters and Setters
-    public String getFiscalYear() {
-        return fiscalYear;
+    public TableSchema() {
+    }
+    
+    public TableSchema(String tableName) {
+        this.tableName = tableName;
+    }
+    
+    public String getTableName() {
+        return tableName;
+    }
+    
+    public void setTableName(String tableName) {
+        this.tableName = tableName;
+    }
+    
+    public TableSchema addColumn(String columnName, ColumnType type) {
+        columnTypes.put(columnName.toLowerCase(), type);
+        return this;
+    }
+    
+    /**
+     * 查询列类型，支持 t.column 形式的限定列名
+     * @param columnName 列名
+     * @return 列类型，未知列返回null
+     */
+    public ColumnType getColumnType(String columnName) {
+        if (columnName == null) {
+            return null;
+        }
+        String name = columnName.trim().toLowerCase();
+        ColumnType type = columnTypes.get(name);
+        if (type == null && name.indexOf('.') != -1) {
+            type = columnTypes.get(name.substring(name.lastIndexOf('.') + 1));
+        }
+        return type;
+    }
+    
+    /**
+     * 判断表结构中是否声明了该列
+     * @param columnName 列名
+     * @return 是否存在
+     */
+    public boolean hasColumn(String columnName) {
+        return getColumnType(columnName) != null;
     }
     
-    public void setFiscalYear(String fiscalYear) {
-        this.fiscalYear = fiscalYear;
+    /**
+     * @return 是否声明了列信息
+     */
+    public boolean hasColumns() {
+        return !columnTypes.isEmpty();
     }
     
-    public String getMofDivCode() {
-        return mofDivCode;
+    public boolean isPartitionAware() {
+        return partitionAware;
     }
     
-    public void setMofDivCode(String mofDivCode) {
-        this.mofDivCode = mofDivCode;
+    public void setPartitionAware(boolean partitionAware) {
+        this.partitionAware = partitionAware;
     }
     
-    public QueryDTO getQueryDTO() {
-        return queryDTO;
+    public TableSchema addSubTable(SubTableRelation relation) {
+        subTables.add(relation);
+        return this;
     }
     
-    public void setQueryDTO(QueryDTO queryDTO) {
-        this.queryDTO = queryDTO;
+    public List<SubTableRelation> getSubTables() {
+        return subTables;
     }
 }
 
-// 查询DTO类
-class QueryDTO {
-    private Page page;
+// 主子表关联关系
+class SubTableRelation {
+    private String tableName;
+    private String parentKey;
+    private String foreignKey;
     private List<String> fieldNames;
-    private List<Map<String, Object>> whereSql;
-    private String isRelatedSubTable;
+    // 基数提示：每条主表记录平均对应的子表记录数
+    private int rowsPerParent = 1;
+    
+    public SubTableRelation() {
+    }
+    
+    public SubTableRelation(String tableName, String parentKey, String foreignKey, int rowsPerParent) {
+        this.tableName = tableName;
+        this.parentKey = parentKey;
+        this.foreignKey = foreignKey;
+        this.rowsPerParent = rowsPerParent;
+    }
     
     // Getters and Setters
-    public Page getPage() {
-        return page;
+    public String getTableName() {
+        return tableName;
     }
     
-    public void setPage(Page page) {
-        this.page = page;
+    public void setTableName(String tableName) {
+        this.tableName = tableName;
     }
     
-    public List<String> getFieldNames() {
-        return fieldNames;
+    public String getParentKey() {
+        return parentKey;
     }
     
-    public void setFieldNames(List<String> fieldNames) {
-        this.fieldNames = fieldNames;
+    public void setParentKey(String parentKey) {
+        this.parentKey = parentKey;
     }
     
-    public List<Map<String, Object>> getWhereSql() {
-        return whereSql;
+    public String getForeignKey() {
+        return foreignKey;
     }
     
-    public void setWhereSql(List<Map<String, Object>> whereSql) {
-        this.whereSql = whereSql;
+    public void setForeignKey(String foreignKey) {
+        this.foreignKey = foreignKey;
     }
     
-    public String getIsRelatedSubTable() {
-        return isRelatedSubTable;
+    public List<String> getFieldNames() {
+        return fieldNames;
+    }
+    
+    public void setFieldNames(List<String> fieldNames) {
+        this.fieldNames = fieldNames;
+    }
+    
+    public int getRowsPerParent() {
+        return rowsPerParent;
     }
     
-    public void setIsRelatedSubTable(String isRelatedSubTable) {
-        this.isRelatedSubTable = isRelatedSubTable;
+    public void setRowsPerParent(int rowsPerParent) {
+        this.rowsPerParent = rowsPerParent;
     }
 }
 
-// 分页类
-class Page {
-    private String pageNumber;
-    private String pageSize;
+// 查询计划：主查询（可能已关联子表）以及需要批量补查的子表
+class QueryPlan {
+    private String mainSql;
+    private final List<SubTableRelation> joinedSubTables = new ArrayList<>();
+    private final List<SubTableRelation> batchSubTables = new ArrayList<>();
     
-    // Getters and Setters
-    public String getPageNumber() {
-        return pageNumber;
+    public String getMainSql() {
+        return mainSql;
     }
     
-    public void setPageNumber(String pageNumber) {
-        this.pageNumber = pageNumber;
+    public void setMainSql(String mainSql) {
+        this.mainSql = mainSql;
     }
     
-    public String getPageSize() {
-        return pageSize;
+    public List<SubTableRelation> getJoinedSubTables() {
+        return joinedSubTables;
     }
     
-    public void setPageSize(String pageSize) {
-        this.pageSize = pageSize;
+    public List<SubTableRelation> getBatchSubTables() {
+        return batchSubTables;
     }
 }
 
 // SQL转换工具类
 public class RestBodyToSqlUtils {
     
+    // 数值字面量
+    private static final Pattern NUMBER_PATTERN = Pattern.compile("[-+]?\\d+(\\.\\d+)?");
+    
+    // to_char(column,'format') 形式的条件列
+    private static final Pattern TO_CHAR_PATTERN = Pattern.compile(
+            "^\\s*to_char\\s*\\(\\s*([\\w\\.]+)\\s*,\\s*'([^']+)'\\s*\\)\\s*$",
+            Pattern.CASE_INSENSITIVE
+    );
+    
+    // 分区键：按年度分区，按区划子分区
+    private static final String FISCAL_YEAR_COLUMN = "fiscal_year";
+    private static final String MOF_DIV_CODE_COLUMN = "mof_div_code";
+    
+    // 年度区间，如 2023-2025
+    private static final Pattern YEAR_RANGE_PATTERN = Pattern.compile("^\\s*(\\d{4})\\s*[-~]\\s*(\\d{4})\\s*$");
+    
+    // 子表每条主表记录对应的行数不超过该值时直接JOIN，否则批量补查
+    private static final int JOIN_MAX_ROWS_PER_PARENT = 1;
+    
+    // 单个IN列表的最大元素个数
+    private static final int MAX_IN_LIST_SIZE = 1000;
+    
+    // 日期按STRICT解析，2025-02-30这类不存在的日期解析失败，不会被调整为月末；STRICT模式下年份用uuuu
+    private static final DateTimeFormatter DATE_LITERAL = strictFormatter("uuuu-MM-dd");
+    private static final DateTimeFormatter TIMESTAMP_LITERAL = strictFormatter("uuuu-MM-dd HH:mm:ss");
+    private static final DateTimeFormatter[] DATE_FORMATS = {
+            DATE_LITERAL, strictFormatter("uuuuMMdd"), strictFormatter("uuuu/MM/dd")};
+    // to_char格式对应的解析器，按格式缓存，不在每次比较时重新构建
+    private static final Map<String, DateTimeFormatter> TO_CHAR_FORMATTERS = new ConcurrentHashMap<>();
+    
     /**
      * 将RestBody转换为SQL WHERE子句
      * @param restBody 请求体
      * @return SQL WHERE子句字符串（包含WHERE条件和分页）
      */
     public static String trans(RestBody restBody) {
+        return trans(restBody, null);
+    }
+    
+    /**
+     * 将RestBody转换为SQL WHERE子句，按表结构中的列类型渲染字面量
+     * @param restBody 请求体
+     * @param schema 表结构信息，为null时所有值按字符串渲染
+     * @return SQL WHERE子句字符串（包含WHERE条件和分页）
+     */
+    public static String trans(RestBody restBody, TableSchema schema) {
         if (restBody == null) {
             return "";
         }
         
         StringBuilder sql = new StringBuilder();
+        try {
+            trans(restBody, schema, sql);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return sql.toString();
+    }
+    
+    /**
+     * 将RestBody转换为SQL WHERE子句并直接写入out，每个条件生成后立即写入，不拼接完整的字符串
+     * 条件很多（如超大IN列表）时配合 {@link SqlChannelWriter} 边生成边写入通道
+     * @param restBody 请求体
+     * @param schema 表结构信息，为null时所有值按字符串渲染
+     * @param out 输出，写入的内容与 {@link #trans(RestBody, TableSchema)} 相同
+     */
+    public static void trans(RestBody restBody, TableSchema schema, Appendable out) throws IOException {
+        if (restBody == null) {
+            return;
+        }
+        
+        long start = SqlTransformMetrics.start();
+        WhereRenderEvent event = null;
+        if (WhereRenderEvent.isRecording()) {
+            event = new WhereRenderEvent();
+            event.begin();
+        }
+        CountingAppendable sql = new CountingAppendable(out);
+        appendWhere(sql, restBody, schema);
+        
+        // 添加分页条件
+        if (restBody.getQueryDTO() != null && restBody.getQueryDTO().getPage() != null) {
+            Page page = restBody.getQueryDTO().getPage();
+            if (page.getPageSize() != null && page.getPageNumber() != null) {
+                try {
+                    int pageSize = Integer.parseInt(page.getPageSize());
+                    int pageNumber = Integer.parseInt(page.getPageNumber());
+                    int offset = (pageNumber - 1) * pageSize;
+                    
+                    if (sql.length() > 0) {
+                        sql.append(" ");
+                    }
+                    sql.append("LIMIT ").append(String.valueOf(pageSize))
+                       .append(" OFFSET ").append(String.valueOf(offset));
+                } catch (NumberFormatException e) {
+                    // 如果解析失败，忽略分页
+                }
+            }
+        }
+        
+        List<Map<String, Object>> whereSql = restBody.getQueryDTO() == null ? null : restBody.getQueryDTO().getWhereSql();
+        if (event != null) {
+            event.end();
+            if (event.shouldCommit()) {
+                event.tableName = schema == null ? null : schema.getTableName();
+                event.conditionCount = whereSql == null ? 0 : whereSql.size();
+                event.outputLength = sql.length();
+                event.commit();
+            }
+        }
+        if (start != SqlTransformMetrics.DISABLED) {
+            SqlTransformMetrics.recordTrans(whereSql, sql.length(), start);
+        }
+    }
+    
+    /**
+     * 生成与分页查询配套的总数查询，不带查询列、排序和分页
+     * @param restBody 请求体
+     * @param schema 表结构信息，必须包含表名
+     * @return COUNT查询SQL
+     */
+    public static String transCount(RestBody restBody, TableSchema schema) {
+        if (schema == null || schema.getTableName() == null || schema.getTableName().trim().isEmpty()) {
+            throw new IllegalArgumentException("Table name is required to build COUNT statement");
+        }
+        
+        StringBuilder sql = new StringBuilder("SELECT COUNT(*) FROM ").append(schema.getTableName());
+        StringBuilder where = new StringBuilder();
+        if (restBody != null) {
+            try {
+                appendWhere(where, restBody, schema);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        if (where.length() > 0) {
+            sql.append(" ").append(where);
+        }
+        return sql.toString();
+    }
+    
+    /**
+     * 查询总数，同一查询条件的总数在缓存有效期内只统计一次，翻页时不再重复COUNT
+     * @param restBody 请求体
+     * @param schema 表结构信息，必须包含表名
+     * @param cache 总数缓存
+     * @param counter 执行COUNT查询并返回结果
+     * @return 总数
+     */
+    public static long countTotal(RestBody restBody, TableSchema schema, CountCache cache, ToLongFunction<String> counter) {
+        String countSql = transCount(restBody, schema);
+        // COUNT语句本身不含分页，可以直接作为查询条件的指纹
+        return cache.getOrLoad(countSql, counter);
+    }
+    
+    /**
+     * 追加WHERE子句（不含分页），whereSql中的条件逐个生成、逐个写入
+     * @param sql 输出
+     * @param restBody 请求体
+     * @param schema 表结构信息
+     */
+    private static void appendWhere(Appendable sql, RestBody restBody, TableSchema schema) throws IOException {
         List<String> conditions = new ArrayList<>();
         
-        // 添加fiscalYear条件
-        if (restBody.getFiscalYear() != null && !restBody.getFiscalYear().trim().isEmpty()) {
-            conditions.add("fiscal_year='" + restBody.getFiscalYear() + "'");
+        if (schema != null && schema.isPartitionAware()) {
+            // 分区键条件放在最前面，按分区、子分区的顺序
+            conditions.add(renderPartitionPredicate(FISCAL_YEAR_COLUMN, restBody.getFiscalYear(), true, schema));
+            conditions.add(renderPartitionPredicate(MOF_DIV_CODE_COLUMN, restBody.getMofDivCode(), false, schema));
+        } else {
+            // 添加fiscalYear条件
+            if (restBody.getFiscalYear() != null && !restBody.getFiscalYear().trim().isEmpty()) {
+                conditions.add(renderComparison(FISCAL_YEAR_COLUMN, "=", restBody.getFiscalYear(), schema));
+            }
+            
+            // 添加mofDivCode条件
+            if (restBody.getMofDivCode() != null && !restBody.getMofDivCode().trim().isEmpty()) {
+                conditions.add(renderComparison(MOF_DIV_CODE_COLUMN, "=", restBody.getMofDivCode(), schema));
+            }
         }
         
-        // 添加mofDivCode条件
-        if (restBody.getMofDivCode() != null && !restBody.getMofDivCode().trim().isEmpty()) {
-            conditions.add("mof_div_code='" + restBody.getMofDivCode() + "'");
+        // 组合所有WHERE条件
+        for (int i = 0; i < conditions.size(); i++) {
+            sql.append(i == 0 ? "WHERE " : " AND ");
+            sql.append(conditions.get(i));
         }
         
-        // 处理whereSql条件
+        // 处理whereSql条件，数组中的每个元素之间用and连接，整体作为最后一个条件
         if (restBody.getQueryDTO() != null) {
             List<Map<String, Object>> whereSql = restBody.getQueryDTO().getWhereSql();
-            if (whereSql != null && !whereSql.isEmpty()) {
-                StringBuilder whereSqlStr = new StringBuilder();
-                
-                // 处理whereSql数组，数组中的每个元素之间用AND连接
+            if (whereSql != null) {
+                boolean opened = false;
                 for (int i = 0; i < whereSql.size(); i++) {
+                    String condition = parseCondition(whereSql.get(i), schema);
+                    if (!opened && (i > 0 || !condition.isEmpty())) {
+                        sql.append(conditions.isEmpty() ? "WHERE " : " AND ");
+                        opened = true;
+                    }
                     if (i > 0) {
-                        whereSqlStr.append(" and ");
+                        sql.append(" and ");
                     }
-                    whereSqlStr.append(parseCondition(whereSql.get(i)));
+                    sql.append(condition);
                 }
-                
-                if (whereSqlStr.length() > 0) {
-                    conditions.add(whereSqlStr.toString());
+            }
+        }
+    }
+    
+    /**
+     * 将RestBody转换为完整的SELECT语句：查询列取自queryDTO.fieldNames，FROM取自表结构中的表名
+     * @param restBody 请求体
+     * @param schema 表结构信息，必须包含表名
+     * @param camelCaseAlias 是否为查询列添加驼峰别名
+     * @return 完整的SELECT语句
+     */
+    public static String transSelect(RestBody restBody, TableSchema schema, boolean camelCaseAlias) {
+        if (schema == null || schema.getTableName() == null || schema.getTableName().trim().isEmpty()) {
+            throw new IllegalArgumentException("Table name is required to build SELECT statement");
+        }
+        
+        List<String> columns = projectColumns(restBody, schema);
+        StringBuilder sql = new StringBuilder(selectList(columns, schema.getTableName(), camelCaseAlias));
+        
+        String where = trans(restBody, schema);
+        if (!where.isEmpty()) {
+            sql.append(" ").append(where);
+        }
+        
+        return sql.toString();
+    }
+    
+    /**
+     * 生成查询计划。queryDTO.isRelatedSubTable为true时按基数提示处理子表：
+     * 一对一（每条主表记录最多对应JOIN_MAX_ROWS_PER_PARENT条）的子表直接LEFT JOIN到分页后的主表结果上，
+     * 一对多的子表改为按本页主键批量补查（见buildSubTableSql），再用stitchSubTable在内存中拼装，
+     * 避免逐行查询子表
+     * @param restBody 请求体
+     * @param schema 表结构信息，必须包含表名
+     * @param camelCaseAlias 是否为查询列添加驼峰别名
+     * @return 查询计划
+     */
+    public static QueryPlan planQuery(RestBody restBody, TableSchema schema, boolean camelCaseAlias) {
+        QueryPlan plan = new QueryPlan();
+        QueryDTO queryDTO = restBody != null ? restBody.getQueryDTO() : null;
+        if (queryDTO == null || !"true".equalsIgnoreCase(queryDTO.getIsRelatedSubTable())
+                || schema == null || schema.getSubTables().isEmpty()) {
+            plan.setMainSql(transSelect(restBody, schema, camelCaseAlias));
+            return plan;
+        }
+        
+        for (SubTableRelation relation : schema.getSubTables()) {
+            if (relation.getRowsPerParent() <= JOIN_MAX_ROWS_PER_PARENT) {
+                plan.getJoinedSubTables().add(relation);
+            } else {
+                plan.getBatchSubTables().add(relation);
+            }
+        }
+        
+        // 主表查询列必须包含关联主键，否则无法关联子表
+        List<String> columns = projectColumns(restBody, schema);
+        if (!columns.isEmpty()) {
+            for (SubTableRelation relation : schema.getSubTables()) {
+                if (!containsIgnoreCase(columns, relation.getParentKey())) {
+                    columns.add(relation.getParentKey());
                 }
             }
         }
         
-        // 组合所有WHERE条件
-        if (!conditions.isEmpty()) {
-            sql.append("WHERE ");
-            for (int i = 0; i < conditions.size(); i++) {
-                if (i > 0) {
-                    sql.append(" AND ");
+        // 关联主键不加驼峰别名，主表记录按原列名取关联值
+        List<String> parentKeys = new ArrayList<>();
+        for (SubTableRelation relation : schema.getSubTables()) {
+            parentKeys.add(relation.getParentKey());
+        }
+        
+        if (plan.getJoinedSubTables().isEmpty()) {
+            StringBuilder sql = new StringBuilder(selectList(columns, schema.getTableName(), camelCaseAlias, parentKeys));
+            String where = trans(restBody, schema);
+            if (!where.isEmpty()) {
+                sql.append(" ").append(where);
+            }
+            plan.setMainSql(sql.toString());
+            return plan;
+        }
+        
+        // 先在派生表中完成主表过滤和分页，再关联子表，保证分页仍按主表记录计算
+        StringBuilder inner = new StringBuilder(selectList(columns, schema.getTableName(), false));
+        String where = trans(restBody, schema);
+        if (!where.isEmpty()) {
+            inner.append(" ").append(where);
+        }
+        
+        List<String> outerColumns = new ArrayList<>();
+        if (columns.isEmpty()) {
+            outerColumns.add("m.*");
+        } else {
+            for (String column : columns) {
+                outerColumns.add("m." + column);
+            }
+        }
+        StringBuilder joins = new StringBuilder();
+        int index = 1;
+        for (SubTableRelation relation : plan.getJoinedSubTables()) {
+            String alias = "s" + index++;
+            List<String> childColumns = relation.getFieldNames();
+            if (childColumns == null || childColumns.isEmpty()) {
+                outerColumns.add(alias + ".*");
+            } else {
+                for (String column : childColumns) {
+                    outerColumns.add(alias + "." + column);
                 }
-                sql.append(conditions.get(i));
             }
+            joins.append(" LEFT JOIN ").append(relation.getTableName()).append(" ").append(alias)
+                 .append(" ON ").append(alias).append(".").append(relation.getForeignKey())
+                 .append(" = m.").append(relation.getParentKey());
         }
         
-        // 添加分页条件
-        if (restBody.getQueryDTO() != null && restBody.getQueryDTO().getPage() != null) {
-            Page page = restBody.getQueryDTO().getPage();
-            if (page.getPageSize() != null && page.getPageNumber() != null) {
-                try {
-                    int pageSize = Integer.parseInt(page.getPageSize());
-                    int pageNumber = Integer.parseInt(page.getPageNumber());
-                    int offset = (pageNumber - 1) * pageSize;
-                    
-                    if (sql.length() > 0) {
-                        sql.append(" ");
-                    }
-                    sql.append("LIMIT ").append(pageSize)
-                       .append(" OFFSET ").append(offset);
-                } catch (NumberFormatException e) {
-                    // 如果解析失败，忽略分页
+        String outer = selectList(outerColumns, "(" + inner + ") m", camelCaseAlias, parentKeys);
+        plan.setMainSql(outer + joins);
+        return plan;
+    }
+    
+    /**
+     * 生成子表批量查询：按本页主表记录的关联主键一次查出所有子表记录
+     * @param relation 子表关联关系
+     * @param parentKeys 本页主表记录的关联主键值
+     * @param schema 主表结构信息，用于渲染主键字面量，可为null
+     * @return 子表查询SQL，主键为空时返回空字符串
+     */
+    public static String buildSubTableSql(SubTableRelation relation, Collection<?> parentKeys, TableSchema schema) {
+        if (parentKeys == null || parentKeys.isEmpty()) {
+            return "";
+        }
+        
+        List<String> columns = new ArrayList<>();
+        if (relation.getFieldNames() != null && !relation.getFieldNames().isEmpty()) {
+            columns.addAll(relation.getFieldNames());
+            if (!containsIgnoreCase(columns, relation.getForeignKey())) {
+                columns.add(relation.getForeignKey());
+            }
+        }
+        
+        StringBuilder sql = new StringBuilder(selectList(columns, relation.getTableName(), false));
+        sql.append(" WHERE ");
+        
+        // 按批拆分IN列表，避免超出数据库对IN列表长度的限制
+        ColumnType type = columnType(relation.getParentKey(), schema);
+        Set<Object> distinctKeys = new LinkedHashSet<>(parentKeys);
+        int count = 0;
+        for (Object key : distinctKeys) {
+            if (count % MAX_IN_LIST_SIZE == 0) {
+                if (count > 0) {
+                    sql.append(") or ");
                 }
+                sql.append(relation.getForeignKey()).append(" in (");
+            } else {
+                sql.append(",");
             }
+            appendLiteral(sql, type, key);
+            count++;
         }
+        sql.append(")");
         
         return sql.toString();
     }
     
+    /**
+     * 把批量查出的子表记录按外键挂到对应的主表记录上，属性名为子表名
+     * 主表记录按parentKey、子表记录按foreignKey取关联值，planQuery生成的主查询不给关联主键加驼峰别名
+     * @param parents 主表记录
+     * @param children 子表记录
+     * @param relation 子表关联关系
+     */
+    public static void stitchSubTable(List<Map<String, Object>> parents, List<Map<String, Object>> children,
+                                      SubTableRelation relation) {
+        Map<String, List<Map<String, Object>>> childrenByKey = new HashMap<>();
+        for (Map<String, Object> child : children) {
+            String key = String.valueOf(child.get(relation.getForeignKey()));
+            childrenByKey.computeIfAbsent(key, k -> new ArrayList<>()).add(child);
+        }
+        
+        for (Map<String, Object> parent : parents) {
+            String key = String.valueOf(parent.get(relation.getParentKey()));
+            List<Map<String, Object>> matched = childrenByKey.get(key);
+            parent.put(relation.getTableName(), matched != null ? matched : new ArrayList<>());
+        }
+    }
+    
+    /**
+     * 生成 SELECT 列 FROM 表 部分
+     * @param columns 查询列，为空表示查询全部列
+     * @param from FROM后的表或派生表
+     * @param camelCaseAlias 是否为查询列添加驼峰别名
+     * @return SQL片段
+     */
+    private static String selectList(List<String> columns, String from, boolean camelCaseAlias) {
+        return selectList(columns, from, camelCaseAlias, Collections.emptyList());
+    }
+    
+    /**
+     * 生成 SELECT 列 FROM 表 部分，keyColumns中的列保留原列名作为别名，不加驼峰别名
+     * @param columns 查询列，为空表示查询全部列
+     * @param from FROM后的表或派生表
+     * @param camelCaseAlias 是否为查询列添加驼峰别名
+     * @param keyColumns 关联主键，stitchSubTable按原列名取值
+     * @return SQL片段
+     */
+    private static String selectList(List<String> columns, String from, boolean camelCaseAlias,
+                                     Collection<String> keyColumns) {
+        String projection = columns.isEmpty() ? "*" : String.join(", ", columns);
+        
+        // 复用SqlFactory的驼峰别名逻辑，只处理查询列部分，FROM后可能是派生表
+        if (camelCaseAlias && !columns.isEmpty()) {
+            if (!keyColumns.isEmpty()) {
+                // 已有别名的列不会再加驼峰别名
+                List<String> keyed = new ArrayList<>(columns.size());
+                for (String column : columns) {
+                    String name = column.substring(column.lastIndexOf('.') + 1);
+                    keyed.add(containsIgnoreCase(keyColumns, name) ? column + " AS " + name : column);
+                }
+                projection = String.join(", ", keyed);
+            }
+            SqlFactory factory = new SqlFactory();
+            factory.fromSql("SELECT " + projection + " FROM m");
+            factory.所有查询字段软添加驼峰别名();
+            String aliased = factory.toSqlStr();
+            projection = aliased.substring("SELECT ".length(), aliased.lastIndexOf(" FROM "));
+        }
+        return "SELECT " + projection + " FROM " + from;
+    }
+    
+    private static boolean containsIgnoreCase(Collection<String> values, String value) {
+        for (String item : values) {
+            if (item.equalsIgnoreCase(value)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * 计算查询列：去掉空列名和重复列，表结构声明了列信息时裁掉不存在的列
+     * @param restBody 请求体
+     * @param schema 表结构信息
+     * @return 查询列，为空表示查询全部列
+     */
+    private static List<String> projectColumns(RestBody restBody, TableSchema schema) {
+        List<String> columns = new ArrayList<>();
+        if (restBody == null || restBody.getQueryDTO() == null || restBody.getQueryDTO().getFieldNames() == null) {
+            return columns;
+        }
+        
+        Set<String> seen = new HashSet<>();
+        for (String fieldName : restBody.getQueryDTO().getFieldNames()) {
+            if (fieldName == null || fieldName.trim().isEmpty()) {
+                continue;
+            }
+            String column = fieldName.trim();
+            if (schema.hasColumns() && !schema.hasColumn(column)) {
+                continue;
+            }
+            if (seen.add(column.toLowerCase())) {
+                columns.add(column);
+            }
+        }
+        return columns;
+    }
+    
+    /**
+     * 渲染分区键条件：直接比较分区键本身，不包函数，单值用=，多值用IN，年度区间用BETWEEN，
+     * 这些形式都能被优化器用来做分区裁剪
+     * @param column 分区键
+     * @param value 条件值，多个值用逗号分隔，区间（仅限年度）用-或~连接
+     * @param allowRange 是否支持区间
+     * @param schema 表结构信息
+     * @return SQL片段
+     */
+    private static String renderPartitionPredicate(String column, String value, boolean allowRange, TableSchema schema) {
+        // 缺少分区键条件会导致全表扫描，直接拒绝
+        if (value == null || value.trim().isEmpty()) {
+            throw new IllegalArgumentException("Partition key " + column + " is required for table " + schema.getTableName());
+        }
+        
+        ColumnType type = schema.getColumnType(column);
+        StringBuilder result = new StringBuilder(column);
+        Matcher range = YEAR_RANGE_PATTERN.matcher(value);
+        if (allowRange && range.matches()) {
+            result.append(" between ");
+            appendLiteral(result, type, range.group(1));
+            result.append(" and ");
+            appendLiteral(result, type, range.group(2));
+            return result.toString();
+        }
+        
+        String[] values = value.split(",");
+        if (values.length == 1) {
+            result.append("=");
+            appendLiteral(result, type, values[0].trim());
+            return result.toString();
+        }
+        
+        result.append(" in (");
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                result.append(",");
+            }
+            appendLiteral(result, type, values[i].trim());
+        }
+        result.append(")");
+        return result.toString();
+    }
+    
     /**
      * 递归解析条件
      * @param condition 条件Map
+     * @param schema 表结构信息
      * @return 解析后的SQL片段
      */
     @SuppressWarnings("unchecked")
-    private static String parseCondition(Map<String, Object> condition) {
+    private static String parseCondition(Map<String, Object> condition, TableSchema schema) {
         StringBuilder result = new StringBuilder();
         
         for (Map.Entry<String, Object> entry : condition.entrySet()) {
@@ -193,34 +715,34 @@ public class RestBodyToSqlUtils {
             
             switch (key.toLowerCase()) {
                 case "and":
-                    result.append(parseAndOr(value, " and "));
+                    result.append(parseAndOr(value, " and ", schema));
                     break;
                 case "or":
-                    result.append(parseAndOr(value, " or "));
+                    result.append(parseAndOr(value, " or ", schema));
                     break;
                 case "bracket":
-                    result.append(parseBracket(value));
+                    result.append(parseBracket(value, schema));
                     break;
                 case "equal":
-                    result.append(parseEqual(value));
+                    result.append(parseEqual(value, schema));
                     break;
                 case "like":
                     result.append(parseLike(value));
                     break;
                 case "greater":
-                    result.append(parseGreater(value));
+                    result.append(parseGreater(value, schema));
                     break;
                 case "less":
-                    result.append(parseLess(value));
+                    result.append(parseLess(value, schema));
                     break;
                 case "not_equal":
-                    result.append(parseNotEqual(value));
+                    result.append(parseNotEqual(value, schema));
                     break;
                 case "in":
-                    result.append(parseIn(value));
+                    result.append(parseIn(value, schema));
                     break;
                 case "not_in":
-                    result.append(parseNotIn(value));
+                    result.append(parseNotIn(value, schema));
                     break;
                 default:
                     // 处理其他未定义的操作符
@@ -235,12 +757,13 @@ public class RestBodyToSqlUtils {
      * 解析AND/OR条件
      * @param value 条件值
      * @param operator 操作符 (and/or)
+     * @param schema 表结构信息
      * @return SQL片段
      */
     @SuppressWarnings("unchecked")
-    private static String parseAndOr(Object value, String operator) {
+    private static String parseAndOr(Object value, String operator, TableSchema schema) {
         if (value instanceof Map) {
-            return parseCondition((Map<String, Object>) value);
+            return parseCondition((Map<String, Object>) value, schema);
         } else if (value instanceof List) {
             List<Map<String, Object>> conditions = (List<Map<String, Object>>) value;
             StringBuilder result = new StringBuilder();
@@ -248,7 +771,7 @@ public class RestBodyToSqlUtils {
                 if (i > 0) {
                     result.append(operator);
                 }
-                result.append(parseCondition(conditions.get(i)));
+                result.append(parseCondition(conditions.get(i), schema));
             }
             return result.toString();
         }
@@ -258,10 +781,11 @@ public class RestBodyToSqlUtils {
     /**
      * 解析括号条件
      * @param value 条件值
+     * @param schema 表结构信息
      * @return SQL片段
      */
     @SuppressWarnings("unchecked")
-    private static String parseBracket(Object value) {
+    private static String parseBracket(Object value, TableSchema schema) {
         if (value instanceof List) {
             List<Map<String, Object>> conditions = (List<Map<String, Object>>) value;
             StringBuilder result = new StringBuilder("(");
@@ -284,7 +808,7 @@ public class RestBodyToSqlUtils {
                 }
                 
                 // 解析当前条件
-                String conditionStr = parseCondition(conditions.get(i));
+                String conditionStr = parseCondition(conditions.get(i), schema);
                 result.append(conditionStr);
             }
             
@@ -297,29 +821,11 @@ public class RestBodyToSqlUtils {
     /**
      * 解析等于条件
      * @param value 条件值
+     * @param schema 表结构信息
      * @return SQL片段
      */
-    @SuppressWarnings("unchecked")
-    private static String parseEqual(Object value) {
-        if (value instanceof Map) {
-            Map<String, Object> equalMap = (Map<String, Object>) value;
-            StringBuilder result = new StringBuilder();
-            int count = 0;
-            
-            for (Map.Entry<String, Object> entry : equalMap.entrySet()) {
-                if (count > 0) {
-                    result.append(" and ");
-                }
-                result.append(entry.getKey())
-                      .append("='")
-                      .append(entry.getValue())
-                      .append("'");
-                count++;
-            }
-            
-            return result.toString();
-        }
-        return "";
+    private static String parseEqual(Object value, TableSchema schema) {
+        return parseComparison(value, "=", schema);
     }
     
     /**
@@ -353,79 +859,52 @@ public class RestBodyToSqlUtils {
     /**
      * 解析大于条件
      * @param value 条件值
+     * @param schema 表结构信息
      * @return SQL片段
      */
-    @SuppressWarnings("unchecked")
-    private static String parseGreater(Object value) {
-        if (value instanceof Map) {
-            Map<String, Object> greaterMap = (Map<String, Object>) value;
-            StringBuilder result = new StringBuilder();
-            int count = 0;
-            
-            for (Map.Entry<String, Object> entry : greaterMap.entrySet()) {
-                if (count > 0) {
-                    result.append(" and ");
-                }
-                result.append(entry.getKey())
-                      .append(">'")
-                      .append(entry.getValue())
-                      .append("'");
-                count++;
-            }
-            
-            return result.toString();
-        }
-        return "";
+    private static String parseGreater(Object value, TableSchema schema) {
+        return parseComparison(value, ">", schema);
     }
     
     /**
      * 解析小于条件
      * @param value 条件值
+     * @param schema 表结构信息
      * @return SQL片段
      */
-    @SuppressWarnings("unchecked")
-    private static String parseLess(Object value) {
-        if (value instanceof Map) {
-            Map<String, Object> lessMap = (Map<String, Object>) value;
-            StringBuilder result = new StringBuilder();
-            int count = 0;
-            
-            for (Map.Entry<String, Object> entry : lessMap.entrySet()) {
-                if (count > 0) {
-                    result.append(" and ");
-                }
-                result.append(entry.getKey())
-                      .append("<'")
-                      .append(entry.getValue())
-                      .append("'");
-                count++;
-            }
-            
-            return result.toString();
-        }
-        return "";
+    private static String parseLess(Object value, TableSchema schema) {
+        return parseComparison(value, "<", schema);
     }
     
     /**
      * 解析不等于条件
      * @param value 条件值
+     * @param schema 表结构信息
+     * @return SQL片段
+     */
+    private static String parseNotEqual(Object value, TableSchema schema) {
+        return parseComparison(value, "!=", schema);
+    }
+    
+    /**
+     * 解析比较条件（=、>、<、!=）
+     * @param value 条件值
+     * @param operator 比较操作符
+     * @param schema 表结构信息
      * @return SQL片段
      */
     @SuppressWarnings("unchecked")
-    private static String parseNotEqual(Object value) {
+    private static String parseComparison(Object value, String operator, TableSchema schema) {
         if (value instanceof Map) {
-            Map<String, Object> notEqualMap = (Map<String, Object>) value;
+            Map<String, Object> compareMap = (Map<String, Object>) value;
             StringBuilder result = new StringBuilder();
             int count = 0;
             
-            for (Map.Entry<String, Object> entry : notEqualMap.entrySet()) {
+            for (Map.Entry<String, Object> entry : compareMap.entrySet()) {
                 if (count > 0) {
                     result.append(" and ");
                 }
-                result.append(entry.getKey())
-                      .append("!='")
-                      .append(entry.getValue())
-                      .append("'");
+                result.append(renderComparison(entry.getKey(), operator, entry.getValue(), schema));
                 count++;
             }
             
@@ -435,76 +914,229 @@ public class RestBodyToSqlUtils {
     }
     
     /**
-     * 解析IN条件
+     * 渲染单个比较条件
+     * to_char(日期列,'yyyymmdd') 形式的条件会改写为日期列上的范围条件，以便走索引
+     * @param column 条件列（可以是表达式）
+     * @param operator 比较操作符
      * @param value 条件值
+     * @param schema 表结构信息
      * @return SQL片段
      */
-    @SuppressWarnings("unchecked")
-    private static String parseIn(Object value) {
-        if (value instanceof Map) {
-            Map<String, Object> inMap = (Map<String, Object>) value;
-            StringBuilder result = new StringBuilder();
-            int count = 0;
-            
-            for (Map.Entry<String, Object> entry : inMap.entrySet()) {
-                if (count > 0) {
-                    result.append(" and ");
-                }
-                result.append(entry.getKey())
-                      .append(" in (");
-                
-                Object inValue = entry.getValue();
-                if (inValue instanceof List) {
-                    List<?> valueList = (List<?>) inValue;
-                    for (int i = 0; i < valueList.size(); i++) {
-                        if (i > 0) {
-                            result.append(",");
-                        }
-                        result.append("'").append(valueList.get(i)).append("'");
+    private static String renderComparison(String column, String operator, Object value, TableSchema schema) {
+        if (schema != null) {
+            String sargable = rewriteToCharComparison(column, operator, value, schema);
+            if (sargable != null) {
+                return sargable;
+            }
+        }
+        
+        StringBuilder result = new StringBuilder();
+        result.append(column).append(operator);
+        appendLiteral(result, columnType(column, schema), value);
+        return result.toString();
+    }
+    
+    /**
+     * 把 to_char(col,'fmt') op 'value' 改写为 col 上的范围条件
+     * @return 改写后的SQL片段，无法改写时返回null
+     */
+    private static String rewriteToCharComparison(String column, String operator, Object value, TableSchema schema) {
+        Matcher matcher = TO_CHAR_PATTERN.matcher(column);
+        if (!matcher.matches() || value == null) {
+            return null;
+        }
+        
+        String dateColumn = matcher.group(1);
+        ColumnType type = schema.getColumnType(dateColumn);
+        if (type != ColumnType.DATE && type != ColumnType.TIMESTAMP) {
+            return null;
+        }
+        
+        // 根据格式确定时间粒度，再算出该区间的起止
+        String format = matcher.group(2).toLowerCase();
+        String text = value.toString().trim();
+        LocalDate start;
+        LocalDate next;
+        try {
+            switch (format) {
+                case "yyyymmdd":
+                case "yyyy-mm-dd":
+                case "yyyy/mm/dd":
+                    start = LocalDate.parse(text, toCharFormatter(format));
+                    next = start.plusDays(1);
+                    break;
+                case "yyyymm":
+                case "yyyy-mm":
+                case "yyyy/mm":
+                    start = YearMonth.parse(text, toCharFormatter(format)).atDay(1);
+                    next = start.plusMonths(1);
+                    break;
+                case "yyyy":
+                    start = Year.parse(text, toCharFormatter(format)).atDay(1);
+                    next = start.plusYears(1);
+                    break;
+                default:
+                    return null;
+            }
+        } catch (DateTimeParseException e) {
+            // 值不是合法日期时不改写，按原条件输出
+            return null;
+        }
+        
+        String startLiteral = dateLiteral(start, type);
+        String nextLiteral = dateLiteral(next, type);
+        switch (operator) {
+            case ">":
+                return dateColumn + ">=" + nextLiteral;
+            case "<":
+                return dateColumn + "<" + startLiteral;
+            case "=":
+                return dateColumn + ">=" + startLiteral + " and " + dateColumn + "<" + nextLiteral;
+            case "!=":
+                return "(" + dateColumn + "<" + startLiteral + " or " + dateColumn + ">=" + nextLiteral + ")";
+            default:
+                return null;
+        }
+    }
+    
+    // Oracle风格的日期格式转为DateTimeFormatter格式
+    private static String toJavaPattern(String format) {
+        return format.replace("yyyy", "uuuu").replace("mm", "MM");
+    }
+    
+    // format只会是rewriteToCharComparison中列出的几种，缓存大小有限
+    private static DateTimeFormatter toCharFormatter(String format) {
+        return TO_CHAR_FORMATTERS.computeIfAbsent(format, f -> strictFormatter(toJavaPattern(f)));
+    }
+    
+    private static DateTimeFormatter strictFormatter(String pattern) {
+        return DateTimeFormatter.ofPattern(pattern).withResolverStyle(ResolverStyle.STRICT);
+    }
+    
+    private static String dateLiteral(LocalDate date, ColumnType type) {
+        if (type == ColumnType.TIMESTAMP) {
+            return "TIMESTAMP '" + date.atStartOfDay().format(TIMESTAMP_LITERAL) + "'";
+        }
+        return "DATE '" + date.format(DATE_LITERAL) + "'";
+    }
+    
+    private static ColumnType columnType(String column, TableSchema schema) {
+        return schema != null ? schema.getColumnType(column) : null;
+    }
+    
+    /**
+     * 按列类型追加字面量：数值列输出原生数值，日期列输出DATE/TIMESTAMP字面量，
+     * 其余情况以及无法识别的值仍按字符串输出
+     * @param result 输出
+     * @param type 列类型，可为null
+     * @param value 条件值
+     */
+    private static void appendLiteral(StringBuilder result, ColumnType type, Object value) {
+        if (type != null && value != null) {
+            String text = value.toString().trim();
+            switch (type) {
+                case NUMBER:
+                    if (value instanceof Number || NUMBER_PATTERN.matcher(text).matches()) {
+                        result.append(text);
+                        return;
                     }
-                } else {
-                    result.append("'").append(inValue).append("'");
-                }
-                
-                result.append(")");
-                count++;
+                    break;
+                case DATE:
+                    LocalDate date = parseDate(text);
+                    if (date != null) {
+                        result.append("DATE '").append(date.format(DATE_LITERAL)).append("'");
+                        return;
+                    }
+                    break;
+                case TIMESTAMP:
+                    LocalDateTime timestamp = parseTimestamp(text);
+                    if (timestamp != null) {
+                        result.append("TIMESTAMP '").append(timestamp.format(TIMESTAMP_LITERAL)).append("'");
+                        return;
+                    }
+                    break;
+                default:
+                    break;
             }
-            
-            return result.toString();
         }
-        return "";
+        result.append("'").append(value).append("'");
+    }
+    
+    // 支持 yyyy-MM-dd、yyyyMMdd、yyyy/MM/dd
+    private static LocalDate parseDate(String text) {
+        for (DateTimeFormatter format : DATE_FORMATS) {
+            try {
+                return LocalDate.parse(text, format);
+            } catch (DateTimeParseException e) {
+                // 尝试下一种格式
+            }
+        }
+        return null;
+    }
+    
+    // 支持 yyyy-MM-dd HH:mm:ss，只有日期部分时取当天零点
+    private static LocalDateTime parseTimestamp(String text) {
+        try {
+            return LocalDateTime.parse(text, TIMESTAMP_LITERAL);
+        } catch (DateTimeParseException e) {
+            LocalDate date = parseDate(text);
+            return date != null ? date.atStartOfDay() : null;
+        }
+    }
+    
+    /**
+     * 解析IN条件
+     * @param value 条件值
+     * @param schema 表结构信息
+     * @return SQL片段
+     */
+    private static String parseIn(Object value, TableSchema schema) {
+        return parseInList(value, " in (", schema);
     }
     
     /**
      * 解析NOT IN条件
      * @param value 条件值
+     * @param schema 表结构信息
+     * @return SQL片段
+     */
+    private static String parseNotIn(Object value, TableSchema schema) {
+        return parseInList(value, " not in (", schema);
+    }
+    
+    /**
+     * 解析IN/NOT IN列表
+     * @param value 条件值
+     * @param operator 操作符（含左括号）
+     * @param schema 表结构信息
      * @return SQL片段
      */
     @SuppressWarnings("unchecked")
-    private static String parseNotIn(Object value) {
+    private static String parseInList(Object value, String operator, TableSchema schema) {
         if (value instanceof Map) {
-            Map<String, Object> notInMap = (Map<String, Object>) value;
+            Map<String, Object> inMap = (Map<String, Object>) value;
             StringBuilder result = new StringBuilder();
             int count = 0;
             
-            for (Map.Entry<String, Object> entry : notInMap.entrySet()) {
+            for (Map.Entry<String, Object> entry : inMap.entrySet()) {
                 if (count > 0) {
                     result.append(" and ");
                 }
                 result.append(entry.getKey())
-                      .append(" not in (");
+                      .append(operator);
                 
-                Object notInValue = entry.getValue();
-                if (notInValue instanceof List) {
-                    List<?> valueList = (List<?>) notInValue;
+                ColumnType type = columnType(entry.getKey(), schema);
+                Object inValue = entry.getValue();
+                if (inValue instanceof List) {
+                    List<?> valueList = (List<?>) inValue;
                     for (int i = 0; i < valueList.size(); i++) {
                         if (i > 0) {
                             result.append(",");
                         }
-                        result.append("'").append(valueList.get(i)).append("'");
+                        appendLiteral(result, type, valueList.get(i));
                     }
                 } else {
-                    result.append("'").append(notInValue).append("'");
+                    appendLiteral(result, type, inValue);
                 }
                 
                 result.append(")");
@@ -515,6 +1147,41 @@ public class RestBodyToSqlUtils {
         }
         return "";
     }
+    
+    // 记录写入的字符数，用于判断是否已有条件和上报长度
+    private static final class CountingAppendable implements Appendable {
+        private final Appendable out;
+        private int length;
+        
+        CountingAppendable(Appendable out) {
+            this.out = out;
+        }
+        
+        int length() {
+            return length;
+        }
+        
+        @Override
+        public Appendable append(CharSequence csq) throws IOException {
+            out.append(csq);
+            length += csq == null ? 4 : csq.length();
+            return this;
+        }
+        
+        @Override
+        public Appendable append(CharSequence csq, int start, int end) throws IOException {
+            out.append(csq, start, end);
+            length += end - start;
+            return this;
+        }
+        
+        @Override
+        public Appendable append(char c) throws IOException {
+            out.append(c);
+            length++;
+            return this;
+        }
+    }
 }
 
 // 测试类
@@ -532,6 +1199,21 @@ class RestBodyToSqlUtilsTest {
         
         // 测试用例4：测试分页功能
         testCase4();
+        
+        // 测试用例5：按列类型渲染字面量
+        testCase5();
+        
+        // 测试用例6：生成完整SELECT语句
+        testCase6();
+        
+        // 测试用例7：关联子表
+        testCase7();
+        
+        // 测试用例8：总数查询及缓存
+        testCase8();
+        
+        // 测试用例9：分区表条件
+        testCase9();
     }
     
     /**
@@ -737,4 +1419,213 @@ class RestBodyToSqlUtilsTest {
         System.out.println("预期的SQL: WHERE fiscal_year='2025' AND mof_div_code='360000000' LIMIT 20 OFFSET 40");
         System.out.println();
     }
+    
+    /**
+     * 测试用例5：按列类型渲染字面量，to_char日期条件改写为范围条件
+     */
+    private static void testCase5() {
+        System.out.println("=== 测试用例5：按列类型渲染字面量 ===");
+        
+        TableSchema schema = new TableSchema("t_budget")
+                .addColumn("fiscal_year", ColumnType.NUMBER)
+                .addColumn("amount", ColumnType.NUMBER)
+                .addColumn("update_time", ColumnType.DATE)
+                .addColumn("create_time", ColumnType.TIMESTAMP);
+        
+        RestBody restBody = new RestBody();
+        restBody.setFiscalYear("2025");
+        restBody.setMofDivCode("360000000");
+        
+        QueryDTO queryDTO = new QueryDTO();
+        List<Map<String, Object>> whereSql = new ArrayList<>();
+        
+        Map<String, Object> condition1 = new HashMap<>();
+        Map<String, Object> andCondition = new HashMap<>();
+        Map<String, Object> greater = new HashMap<>();
+        greater.put("to_char(update_time,'yyyymmdd')", "20250101");
+        andCondition.put("greater", greater);
+        condition1.put("and", andCondition);
+        whereSql.add(condition1);
+        
+        Map<String, Object> condition2 = new HashMap<>();
+        Map<String, Object> andCondition2 = new HashMap<>();
+        Map<String, Object> less = new HashMap<>();
+        less.put("amount", "1000");
+        andCondition2.put("less", less);
+        condition2.put("and", andCondition2);
+        whereSql.add(condition2);
+        
+        Map<String, Object> condition3 = new HashMap<>();
+        Map<String, Object> andCondition3 = new HashMap<>();
+        Map<String, Object> equal = new HashMap<>();
+        equal.put("create_time", "2025-03-01");
+        andCondition3.put("equal", equal);
+        condition3.put("and", andCondition3);
+        whereSql.add(condition3);
+        
+        // 不存在的日期不改写，按原条件输出
+        Map<String, Object> condition4 = new HashMap<>();
+        Map<String, Object> andCondition4 = new HashMap<>();
+        Map<String, Object> invalidDate = new HashMap<>();
+        invalidDate.put("to_char(update_time,'yyyymmdd')", "20250230");
+        andCondition4.put("less", invalidDate);
+        condition4.put("and", andCondition4);
+        whereSql.add(condition4);
+        
+        queryDTO.setWhereSql(whereSql);
+        restBody.setQueryDTO(queryDTO);
+        
+        String sql = RestBodyToSqlUtils.trans(restBody, schema);
+        System.out.println("生成的SQL: " + sql);
+        System.out.println("预期的SQL: WHERE fiscal_year=2025 AND mof_div_code='360000000' AND update_time>=DATE '2025-01-02' and amount<1000 and create_time=TIMESTAMP '2025-03-01 00:00:00' and to_char(update_time,'yyyymmdd')<'20250230'");
+        System.out.println();
+    }
+    
+    /**
+     * 测试用例6：生成完整SELECT语句，只查询fieldNames中的列并添加驼峰别名
+     */
+    private static void testCase6() {
+        System.out.println("=== 测试用例6：生成完整SELECT语句 ===");
+        
+        TableSchema schema = new TableSchema("t_agency")
+                .addColumn("agency_id", ColumnType.STRING)
+                .addColumn("agency_code", ColumnType.STRING)
+                .addColumn("agency_name", ColumnType.STRING);
+        
+        RestBody restBody = new RestBody();
+        restBody.setFiscalYear("2025");
+        restBody.setMofDivCode("360000000");
+        
+        QueryDTO queryDTO = new QueryDTO();
+        Page page = new Page();
+        page.setPageNumber("1");
+        page.setPageSize("50");
+        queryDTO.setPage(page);
+        queryDTO.setFieldNames(Arrays.asList("agency_id", "agency_code", "agency_id", "no_such_column"));
+        restBody.setQueryDTO(queryDTO);
+        
+        String sql = RestBodyToSqlUtils.transSelect(restBody, schema, true);
+        System.out.println("生成的SQL: " + sql);
+        System.out.println("预期的SQL: SELECT agency_id AS agencyId, agency_code AS agencyCode FROM t_agency WHERE fiscal_year='2025' AND mof_div_code='360000000' LIMIT 50 OFFSET 0");
+        System.out.println();
+    }
+    
+    /**
+     * 测试用例7：关联子表，一对一子表JOIN，一对多子表按主键批量补查
+     */
+    private static void testCase7() {
+        System.out.println("=== 测试用例7：关联子表 ===");
+        
+        SubTableRelation ext = new SubTableRelation("t_agency_ext", "agency_id", "agency_id", 1);
+        ext.setFieldNames(Arrays.asList("leader_name"));
+        SubTableRelation detail = new SubTableRelation("t_agency_detail", "agency_id", "agency_id", 20);
+        detail.setFieldNames(Arrays.asList("item_name", "amount"));
+        TableSchema schema = new TableSchema("t_agency")
+                .addColumn("agency_id", ColumnType.STRING)
+                .addColumn("agency_code", ColumnType.STRING)
+                .addSubTable(ext)
+                .addSubTable(detail);
+        
+        RestBody restBody = new RestBody();
+        restBody.setFiscalYear("2025");
+        
+        QueryDTO queryDTO = new QueryDTO();
+        Page page = new Page();
+        page.setPageNumber("1");
+        page.setPageSize("10");
+        queryDTO.setPage(page);
+        queryDTO.setIsRelatedSubTable("true");
+        queryDTO.setFieldNames(Arrays.asList("agency_code"));
+        restBody.setQueryDTO(queryDTO);
+        
+        QueryPlan plan = RestBodyToSqlUtils.planQuery(restBody, schema, true);
+        System.out.println("主查询: " + plan.getMainSql());
+        System.out.println("预期的SQL: SELECT m.agency_code AS agencyCode, m.agency_id AS agency_id, s1.leader_name AS leaderName FROM (SELECT agency_code, agency_id FROM t_agency WHERE fiscal_year='2025' LIMIT 10 OFFSET 0) m LEFT JOIN t_agency_ext s1 ON s1.agency_id = m.agency_id");
+        
+        // 主查询返回的记录：普通列按驼峰别名，关联主键保留原列名
+        List<Map<String, Object>> parents = new ArrayList<>();
+        Map<String, Object> parent = new HashMap<>();
+        parent.put("agencyCode", "A01");
+        parent.put("agency_id", "101001");
+        parent.put("leaderName", "张三");
+        parents.add(parent);
+        
+        String childSql = RestBodyToSqlUtils.buildSubTableSql(detail, Arrays.asList("101001", "101002"), schema);
+        System.out.println("子表查询: " + childSql);
+        System.out.println("预期的SQL: SELECT item_name, amount, agency_id FROM t_agency_detail WHERE agency_id in ('101001','101002')");
+        
+        List<Map<String, Object>> children = new ArrayList<>();
+        Map<String, Object> child = new HashMap<>();
+        child.put("agency_id", "101001");
+        child.put("item_name", "办公费");
+        children.add(child);
+        RestBodyToSqlUtils.stitchSubTable(parents, children, detail);
+        System.out.println("拼装结果: " + parents);
+        System.out.println();
+    }
+    
+    /**
+     * 测试用例8：总数查询及缓存，翻页时不重复统计
+     */
+    private static void testCase8() {
+        System.out.println("=== 测试用例8：总数查询及缓存 ===");
+        
+        TableSchema schema = new TableSchema("t_agency");
+        RestBody restBody = new RestBody();
+        restBody.setFiscalYear("2025");
+        restBody.setMofDivCode("360000000");
+        
+        QueryDTO queryDTO = new QueryDTO();
+        Page page = new Page();
+        page.setPageNumber("1");
+        page.setPageSize("20");
+        queryDTO.setPage(page);
+        queryDTO.setFieldNames(Arrays.asList("agency_id", "agency_code"));
+        restBody.setQueryDTO(queryDTO);
+        
+        String countSql = RestBodyToSqlUtils.transCount(restBody, schema);
+        System.out.println("生成的SQL: " + countSql);
+        System.out.println("预期的SQL: SELECT COUNT(*) FROM t_agency WHERE fiscal_year='2025' AND mof_div_code='360000000'");
+        
+        CountCache cache = new CountCache(5, TimeUnit.MINUTES, 1000);
+        int[] executed = {0};
+        for (int pageNumber = 1; pageNumber <= 3; pageNumber++) {
+            page.setPageNumber(String.valueOf(pageNumber));
+            RestBodyToSqlUtils.countTotal(restBody, schema, cache, sql -> {
+                executed[0]++;
+                return 12345L;
+            });
+        }
+        System.out.println("翻页3次，实际执行COUNT次数: " + executed[0] + "，预期: 1");
+        System.out.println();
+    }
+    
+    /**
+     * 测试用例9：分区表条件，支持多年度区间和多个区划，缺少分区键时拒绝生成
+     */
+    private static void testCase9() {
+        System.out.println("=== 测试用例9：分区表条件 ===");
+        
+        TableSchema schema = new TableSchema("t_budget")
+                .addColumn("fiscal_year", ColumnType.NUMBER)
+                .addColumn("mof_div_code", ColumnType.STRING);
+        schema.setPartitionAware(true);
+        
+        RestBody restBody = new RestBody();
+        restBody.setFiscalYear("2023-2025");
+        restBody.setMofDivCode("360000000,360100000");
+        
+        String sql = RestBodyToSqlUtils.trans(restBody, schema);
+        System.out.println("生成的SQL: " + sql);
+        System.out.println("预期的SQL: WHERE fiscal_year between 2023 and 2025 AND mof_div_code in ('360000000','360100000')");
+        
+        restBody.setMofDivCode(null);
+        try {
+            RestBodyToSqlUtils.trans(restBody, schema);
+            System.out.println("缺少分区键未被拦截");
+        } catch (IllegalArgumentException e) {
+            System.out.println("缺少分区键: " + e.getMessage());
+        }
+        System.out.println();
+    }
 }
\ No newline at end of file
@@ -0,0 +1,42 @@
+package com.example.testar;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.annotation.DeleteOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 慢转换样本：GET /actuator/slowsql?limit=20 返回耗时最长的样本，DELETE 清空
+ * 阈值和容量由 sql.transform.slow.threshold-ms、sql.transform.slow.capacity 配置，阈值小于0时关闭采样
+ */
+@Component
+@Endpoint(id = "slowsql")
+public class SlowTransformEndpoint {
+
+    private static final int DEFAULT_LIMIT = 20;
+
+    public SlowTransformEndpoint(@Value("${sql.transform.slow.threshold-ms:50}") long thresholdMillis,
+                                 @Value("${sql.transform.slow.capacity:128}") int capacity) {
+        SlowTransformRecorder.configure(thresholdMillis, capacity);
+    }
+
+    @ReadOperation
+    public List<Map<String, Object>> top(@Nullable Integer limit) {
+        List<Map<String, Object>> result = new ArrayList<>();
+        for (SlowTransformRecorder.Sample sample : SlowTransformRecorder.top(limit == null ? DEFAULT_LIMIT : limit)) {
+            result.add(sample.toMap());
+        }
+        return result;
+    }
+
+    @DeleteOperation
+    public void clear() {
+        SlowTransformRecorder.clear();
+    }
+}
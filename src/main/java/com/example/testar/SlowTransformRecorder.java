@@ -0,0 +1,239 @@
+package com.example.testar;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 慢转换采样：一次转换（fromSql到toSqlStr之间各阶段耗时之和）超过阈值时记录一条样本
+ * 样本保存在固定容量的环形缓冲区中，写入只有一次原子自增和一次数组写，不加锁，满了覆盖最旧的样本
+ * 样本包含SQL指纹和截断的SQL、经过的阶段、各阶段耗时和分配字节数估计，由 {@link SlowTransformEndpoint} 输出耗时最长的前N条
+ */
+final class SlowTransformRecorder {
+
+    // 样本中保留的SQL长度
+    private static final int MAX_SQL_LENGTH = 256;
+    private static final int DEFAULT_CAPACITY = 128;
+
+    // 不在Spring中运行时（如直接运行main）由同名系统属性配置阈值，Spring中由SlowTransformEndpoint读取配置
+    private static volatile long thresholdNanos =
+            Long.getLong("sql.transform.slow.threshold-ms", 50L) * 1_000_000L;
+    private static volatile AtomicReferenceArray<Sample> samples = new AtomicReferenceArray<>(DEFAULT_CAPACITY);
+    private static final AtomicLong cursor = new AtomicLong();
+
+    // HotSpot支持按线程统计分配字节数，其他虚拟机上不统计；虚拟线程上可能不支持，此时样本中记为-1
+    private static final com.sun.management.ThreadMXBean allocationBean = allocationBean();
+
+    private SlowTransformRecorder() {
+    }
+
+    /**
+     * 调整阈值和容量，调整容量会清空已有样本
+     * @param thresholdMillis 阈值（毫秒），小于0时关闭采样
+     * @param capacity 最多保留的样本数
+     */
+    static void configure(long thresholdMillis, int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        thresholdNanos = thresholdMillis < 0 ? -1 : thresholdMillis * 1_000_000L;
+        if (capacity != samples.length()) {
+            samples = new AtomicReferenceArray<>(capacity);
+        }
+    }
+
+    static boolean isEnabled() {
+        return thresholdNanos >= 0;
+    }
+
+    // 开始跟踪一次转换，未启用时返回null
+    static Trace begin() {
+        return isEnabled() ? new Trace() : null;
+    }
+
+    static void record(Sample sample) {
+        AtomicReferenceArray<Sample> buffer = samples;
+        int index = (int) (cursor.getAndIncrement() % buffer.length());
+        buffer.set(index, sample);
+    }
+
+    /**
+     * 耗时最长的前N条样本
+     * @param limit 最多返回的条数，小于0时按0处理
+     */
+    static List<Sample> top(int limit) {
+        limit = Math.max(limit, 0);
+        AtomicReferenceArray<Sample> buffer = samples;
+        List<Sample> result = new ArrayList<>(buffer.length());
+        for (int i = 0; i < buffer.length(); i++) {
+            Sample sample = buffer.get(i);
+            if (sample != null) {
+                result.add(sample);
+            }
+        }
+        result.sort(Comparator.comparingLong(Sample::getTotalNanos).reversed());
+        return result.size() > limit ? new ArrayList<>(result.subList(0, limit)) : result;
+    }
+
+    static void clear() {
+        AtomicReferenceArray<Sample> buffer = samples;
+        for (int i = 0; i < buffer.length(); i++) {
+            buffer.set(i, null);
+        }
+    }
+
+    private static com.sun.management.ThreadMXBean allocationBean() {
+        try {
+            ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+            if (bean instanceof com.sun.management.ThreadMXBean) {
+                com.sun.management.ThreadMXBean hotspot = (com.sun.management.ThreadMXBean) bean;
+                if (hotspot.isThreadAllocatedMemorySupported() && hotspot.isThreadAllocatedMemoryEnabled()) {
+                    return hotspot;
+                }
+            }
+        } catch (LinkageError e) {
+            // 没有com.sun.management
+        }
+        return null;
+    }
+
+    // 当前线程已分配的字节数，不支持时返回-1
+    private static long allocatedBytes() {
+        return allocationBean == null ? -1 : allocationBean.getCurrentThreadAllocatedBytes();
+    }
+
+    // 一次转换的跟踪，只在一个线程中使用
+    static final class Trace {
+        private final Map<String, Long> phaseNanos = new LinkedHashMap<>();
+        private final StringBuilder pipeline = new StringBuilder();
+        private long totalNanos;
+        private long allocated;
+        private long phaseAllocated;
+        // 有阶段无法统计分配字节数
+        private boolean allocationUnknown;
+
+        private Trace() {
+        }
+
+        void enter() {
+            phaseAllocated = allocatedBytes();
+        }
+
+        void exit(String phase, long elapsedNanos) {
+            long current = allocatedBytes();
+            if (current < 0 || phaseAllocated < 0) {
+                allocationUnknown = true;
+            } else {
+                allocated += current - phaseAllocated;
+            }
+            totalNanos += elapsedNanos;
+            phaseNanos.merge(phase, elapsedNanos, Long::sum);
+            if (pipeline.length() > 0) {
+                pipeline.append('>');
+            }
+            pipeline.append(phase);
+        }
+
+        /**
+         * 结束一次转换，超过阈值时记录样本，之后重新开始累计
+         * @param type 语句类型
+         * @param sql 原始SQL
+         */
+        void finish(String type, String sql) {
+            long threshold = thresholdNanos;
+            if (threshold >= 0 && totalNanos >= threshold) {
+                record(new Sample(type, sql, pipeline.toString(), new LinkedHashMap<>(phaseNanos), totalNanos,
+                        allocationUnknown ? -1 : allocated));
+            }
+            phaseNanos.clear();
+            pipeline.setLength(0);
+            totalNanos = 0;
+            allocated = 0;
+            allocationUnknown = false;
+        }
+    }
+
+    static final class Sample {
+        private final long timestamp = System.currentTimeMillis();
+        private final String statementType;
+        private final String shape;
+        private final String sql;
+        private final int sqlLength;
+        private final String pipeline;
+        private final Map<String, Long> phaseNanos;
+        private final long totalNanos;
+        private final long allocatedBytes;
+
+        Sample(String statementType, String sql, String pipeline, Map<String, Long> phaseNanos, long totalNanos,
+               long allocatedBytes) {
+            this.statementType = statementType == null ? "UNSUPPORTED" : statementType;
+            this.shape = SqlTransformMetrics.sqlShape(sql);
+            this.sql = sql.length() > MAX_SQL_LENGTH ? sql.substring(0, MAX_SQL_LENGTH) + "..." : sql;
+            this.sqlLength = sql.length();
+            this.pipeline = pipeline;
+            this.phaseNanos = phaseNanos;
+            this.totalNanos = totalNanos;
+            this.allocatedBytes = allocatedBytes;
+        }
+
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        public String getStatementType() {
+            return statementType;
+        }
+
+        // 只有常量不同的SQL指纹相同，见 SqlTransformMetrics.sqlShape
+        public String getShape() {
+            return shape;
+        }
+
+        // 截断后的SQL
+        public String getSql() {
+            return sql;
+        }
+
+        public int getSqlLength() {
+            return sqlLength;
+        }
+
+        // 经过的阶段，如 parse>table_mapping>to_camel_case>render
+        public String getPipeline() {
+            return pipeline;
+        }
+
+        public Map<String, Long> getPhaseNanos() {
+            return phaseNanos;
+        }
+
+        public long getTotalNanos() {
+            return totalNanos;
+        }
+
+        // 分配字节数估计，不支持统计时为-1
+        public long getAllocatedBytes() {
+            return allocatedBytes;
+        }
+
+        Map<String, Object> toMap() {
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("timestamp", timestamp);
+            map.put("statementType", statementType);
+            map.put("shape", shape);
+            map.put("sql", sql);
+            map.put("sqlLength", sqlLength);
+            map.put("pipeline", pipeline);
+            map.put("phaseNanos", phaseNanos);
+            map.put("totalNanos", totalNanos);
+            map.put("allocatedBytes", allocatedBytes);
+            return map;
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package com.example.testar;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 把SQL按UTF-8边编码边写入通道（文件、Socket等），用于 {@link SqlFactory#writeSql(Appendable)} 和
+ * {@link RestBodyToSqlUtils#trans(RestBody, TableSchema, Appendable)}
+ * 编码直接读取传入的字符序列，写满一个缓冲区就写出，整条SQL不会同时以String和byte[]形式存在于堆上
+ * 缓冲区是池化的直接内存，关闭时归还；不负责关闭通道；一个实例只能在一个线程中使用
+ */
+public final class SqlChannelWriter implements Appendable, Flushable, Closeable {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    // 池中最多保留的缓冲区个数，超过的直接丢弃由GC回收
+    private static final int MAX_POOLED = 16;
+    private static final Queue<ByteBuffer> pool = new ConcurrentLinkedQueue<>();
+    private static final AtomicInteger pooled = new AtomicInteger();
+
+    private final WritableByteChannel channel;
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    // 两次append之间被拆开的代理对，以及append(char)使用的字符缓冲
+    private final char[] chars = new char[2];
+    private final CharBuffer charBuffer = CharBuffer.wrap(chars);
+    private boolean pendingHighSurrogate;
+    private ByteBuffer buffer;
+    private long bytesWritten;
+
+    public SqlChannelWriter(WritableByteChannel channel) {
+        this.channel = channel;
+        this.buffer = acquire();
+    }
+
+    @Override
+    public SqlChannelWriter append(CharSequence csq) throws IOException {
+        return csq == null ? append("null", 0, 4) : append(csq, 0, csq.length());
+    }
+
+    @Override
+    public SqlChannelWriter append(CharSequence csq, int start, int end) throws IOException {
+        if (csq == null) {
+            return append("null", 0, 4);
+        }
+        ensureOpen();
+        if (start < end && pendingHighSurrogate) {
+            encodePending(csq.charAt(start));
+            start++;
+        }
+        if (start < end) {
+            encode(CharBuffer.wrap(csq, start, end));
+        }
+        return this;
+    }
+
+    @Override
+    public SqlChannelWriter append(char c) throws IOException {
+        ensureOpen();
+        if (pendingHighSurrogate) {
+            encodePending(c);
+        } else {
+            chars[0] = c;
+            charBuffer.limit(1).position(0);
+            encode(charBuffer);
+        }
+        return this;
+    }
+
+    // 已写入通道的字节数，不含缓冲区中未写出的部分
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    // 写出缓冲区中的内容，被拆开的代理对保留到下一次append
+    @Override
+    public void flush() throws IOException {
+        ensureOpen();
+        drain();
+    }
+
+    /**
+     * 结束编码并写出剩余内容，归还缓冲区，不关闭通道
+     */
+    @Override
+    public void close() throws IOException {
+        if (buffer == null) {
+            return;
+        }
+        try {
+            if (pendingHighSurrogate) {
+                // 只有高代理没有低代理，按编码错误替换
+                pendingHighSurrogate = false;
+                charBuffer.limit(1).position(0);
+                encode(charBuffer, true);
+            } else {
+                encode(CharBuffer.allocate(0), true);
+            }
+            while (encoder.flush(buffer).isOverflow()) {
+                drain();
+            }
+            drain();
+        } finally {
+            release(buffer);
+            buffer = null;
+        }
+    }
+
+    // 上次剩下的高代理和本次第一个字符一起编码
+    private void encodePending(char c) throws IOException {
+        pendingHighSurrogate = false;
+        chars[1] = c;
+        charBuffer.limit(2).position(0);
+        encode(charBuffer);
+    }
+
+    private void encode(CharBuffer in) throws IOException {
+        encode(in, false);
+    }
+
+    private void encode(CharBuffer in, boolean endOfInput) throws IOException {
+        while (true) {
+            CoderResult result = encoder.encode(in, buffer, endOfInput);
+            if (result.isOverflow()) {
+                drain();
+            } else if (result.isUnderflow()) {
+                // 末尾是代理对的前一半，等下一次append
+                if (in.hasRemaining()) {
+                    chars[0] = in.get();
+                    pendingHighSurrogate = true;
+                }
+                return;
+            } else {
+                result.throwException();
+            }
+        }
+    }
+
+    private void drain() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            bytesWritten += channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    private void ensureOpen() throws IOException {
+        if (buffer == null) {
+            throw new IOException("Writer closed");
+        }
+    }
+
+    private static ByteBuffer acquire() {
+        ByteBuffer buffer = pool.poll();
+        if (buffer == null) {
+            return ByteBuffer.allocateDirect(BUFFER_SIZE);
+        }
+        pooled.decrementAndGet();
+        return buffer;
+    }
+
+    private static void release(ByteBuffer buffer) {
+        if (pooled.incrementAndGet() <= MAX_POOLED) {
+            buffer.clear();
+            pool.offer(buffer);
+        } else {
+            pooled.decrementAndGet();
+        }
+    }
+}
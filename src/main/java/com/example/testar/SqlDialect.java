@@ -0,0 +1,39 @@
+package com.example.testar;
+
+/**
+ * SQL方言中影响词法扫描的差异
+ * 目前只有字符串常量中的反斜杠：MySQL默认把反斜杠当作转义符（'it\'s'），
+ * 标准SQL、PostgreSQL、Oracle中反斜杠是普通字符（'C:\' 是一个完整的字符串）
+ * 由系统属性 sql.transform.dialect 选择（ansi、mysql），默认ansi，只有两个连续引号是转义，MySQL需要显式指定；
+ * {@link SqlScanner} 和 {@link SqlFileTransformer} 的字节扫描共用同一个设置，语句边界和子句划分保持一致
+ */
+enum SqlDialect {
+    MYSQL(true),
+    ANSI(false);
+
+    private static final SqlDialect CURRENT = of(System.getProperty("sql.transform.dialect", "ansi"));
+
+    private final boolean backslashEscapes;
+
+    SqlDialect(boolean backslashEscapes) {
+        this.backslashEscapes = backslashEscapes;
+    }
+
+    // 字符串常量中的反斜杠是否转义下一个字符
+    boolean isBackslashEscapes() {
+        return backslashEscapes;
+    }
+
+    static SqlDialect current() {
+        return CURRENT;
+    }
+
+    static SqlDialect of(String name) {
+        for (SqlDialect dialect : values()) {
+            if (dialect.name().equalsIgnoreCase(name.trim())) {
+                return dialect;
+            }
+        }
+        throw new IllegalArgumentException("Unknown SQL dialect: " + name);
+    }
+}
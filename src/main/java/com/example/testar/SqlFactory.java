@@ -1,17 +1,167 @@
 package com.example.testar;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.*;
-import java.util.regex.*;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
 import java.util.stream.Collectors;
 
-public class SqlFactory implements SelectAsName, SqlParser, FieldEditor, TableNameMap {
+public class SqlFactory implements SelectAsName, SqlParser, FieldEditor, TableNameMap, SqlRewriter {
+
+    // 子查询占位符的分隔字符，不会出现在正常SQL文本中
+    static final char SUBQUERY_MARK = '\u0000';
+
+    // 集合运算关键字，较长的写法放在前面
+    // SELECT语句FROM之后的子句，按出现顺序
+    private static final String[] SELECT_CLAUSES = {
+            "WHERE", "GROUP BY", "HAVING", "ORDER BY", "LIMIT", "OFFSET", "FETCH", "FOR"};
+    // SELECT_CLAUSES中前几个子句引用列，参与改写；其后的分页和加锁子句（FOR UPDATE、FOR SHARE等）不引用列，原样复制
+    private static final int REWRITTEN_CLAUSES = 4;
+    private static final String[] STATEMENT_TYPES = {"SELECT", "WITH", "INSERT", "UPDATE", "DELETE"};
+    private static final String[] SET_OPERATORS = {
+            "UNION ALL", "UNION DISTINCT", "UNION", "INTERSECT", "EXCEPT", "MINUS"};
 
     private SqlStatement sqlStatement;
     private Map<String, String> tableNameMapping = new HashMap<>();
+    private TableNameDictionary tableNameDictionary;
+    // 字段转换时不改动的别名，转换前收集
+    private Set<String> definedAliases = Collections.emptySet();
+    // 语句中定义的CTE名称（小写），引用CTE的限定列名可能引用其中的列别名
+    private Set<String> definedCteNames = Collections.emptySet();
+    // 通配映射规则，添加后重新编译为一个自动机
+    private final Map<String, String> tableNameRules = new LinkedHashMap<>();
+    private TableNameDictionary compiledTableNameRules;
+    // 本次解析中已解析过的作用域，相同文本的子查询只解析一次
+    private final Map<SqlSpan, SqlStatement> parsedScopes = new HashMap<>();
+    // 本次解析中原样输出的语句对应的错误，按需解析的子句在改写或输出时才会补充
+    private final List<SqlParseException> parseErrors = new ArrayList<>();
+    // 指标标签：语句类型和形状指纹，未启用指标时为null
+    private String metricType;
+    private String metricShape;
+    private int scopeCacheHits;
+    private int scopeCacheMisses;
+    // 慢转换采样的跟踪，fromSql开始、toSqlStr结束，未启用采样时为null
+    private SlowTransformRecorder.Trace trace;
+    // 当前阶段的JFR事件，没有记录时为null
+    private SqlTransformEvent transformEvent;
 
     @Override
     public void fromSql(String sql) {
-        this.sqlStatement = parseSql(sql);
+        trace = SlowTransformRecorder.begin();
+        boolean metricsEnabled = SqlTransformMetrics.isEnabled();
+        SqlParseEvent parseEvent = null;
+        if (SqlParseEvent.isRecording()) {
+            parseEvent = new SqlParseEvent();
+            parseEvent.begin();
+        }
+        long start = startPhase(metricsEnabled);
+        parsedScopes.clear();
+        parseErrors.clear();
+        scopeCacheHits = 0;
+        scopeCacheMisses = 0;
+        this.sqlStatement = parseSql(SqlSpan.of(sql));
+        if (parseEvent != null) {
+            parseEvent.end();
+            if (parseEvent.shouldCommit()) {
+                ParseResult result = getParseResult();
+                parseEvent.statementType = result.getStatementType();
+                parseEvent.status = result.getStatus().name();
+                parseEvent.inputLength = sql.length();
+                parseEvent.scopeCount = scopeCacheMisses;
+                parseEvent.errorCount = result.getErrors().size();
+                parseEvent.commit();
+            }
+        }
+        if (start != SqlTransformMetrics.DISABLED) {
+            long elapsed = System.nanoTime() - start;
+            if (trace != null) {
+                trace.exit(SqlTransformMetrics.PHASE_PARSE, elapsed);
+            }
+            if (metricsEnabled) {
+                ParseResult result = getParseResult();
+                metricType = result.getStatementType();
+                metricShape = SqlTransformMetrics.sqlShape(sql);
+                SqlTransformMetrics.recordParse(result, metricShape, sql.length(), scopeCacheHits, scopeCacheMisses, elapsed);
+            }
+        }
+        if (!metricsEnabled) {
+            metricType = null;
+            metricShape = null;
+        }
+        // 设置了映射字典或通配规则时，新语句解析后直接映射，字典优先
+        if (tableNameDictionary != null || compiledTableNameRules != null) {
+            long mappingStart = startPhase();
+            sqlStatement.applyTableMapping(this::lookupConfiguredTableName);
+            recordPhase(SqlTransformMetrics.PHASE_TABLE_MAPPING, mappingStart);
+        }
+    }
+
+    // 开始一个转换阶段，启用了指标或慢转换采样时才计时，开启JFR记录时同时开始事件
+    private long startPhase() {
+        if (SqlTransformEvent.isRecording()) {
+            transformEvent = new SqlTransformEvent();
+            transformEvent.begin();
+        }
+        return startPhase(metricShape != null);
+    }
+
+    private long startPhase(boolean metricsEnabled) {
+        if (trace != null) {
+            trace.enter();
+        } else if (!metricsEnabled) {
+            return SqlTransformMetrics.DISABLED;
+        }
+        return System.nanoTime();
+    }
+
+    private void recordPhase(String phase, long start) {
+        recordPhase(phase, start, -1);
+    }
+
+    private void recordPhase(String phase, long start, int outputLength) {
+        if (transformEvent != null) {
+            SqlTransformEvent event = transformEvent;
+            transformEvent = null;
+            event.end();
+            if (event.shouldCommit()) {
+                event.phase = phase;
+                event.statementType = classify(sqlStatement.originalSql);
+                event.inputLength = sqlStatement.originalSql.getSource().length();
+                event.outputLength = outputLength;
+                event.commit();
+            }
+        }
+        if (start == SqlTransformMetrics.DISABLED) {
+            return;
+        }
+        long elapsed = System.nanoTime() - start;
+        if (metricShape != null) {
+            SqlTransformMetrics.recordPhase(phase, metricType, metricShape, elapsed);
+        }
+        if (trace != null) {
+            trace.exit(phase, elapsed);
+        }
+    }
+
+    @Override
+    public ParseResult getParseResult() {
+        if (sqlStatement == null) {
+            return ParseResult.EMPTY;
+        }
+        String type = classify(sqlStatement.originalSql);
+        ParseResult.Status status;
+        if (type == null) {
+            status = ParseResult.Status.UNSUPPORTED;
+        } else if (sqlStatement instanceof PassThroughStatement) {
+            status = ParseResult.Status.FAILED;
+        } else if (!parseErrors.isEmpty()) {
+            status = ParseResult.Status.PARTIAL;
+        } else {
+            status = ParseResult.Status.PARSED;
+        }
+        return new ParseResult(status, type, new ArrayList<>(parseErrors));
     }
 
     @Override
@@ -19,46 +169,197 @@ public class SqlFactory implements SelectAsName, SqlParser, FieldEditor, TableNa
         if (sqlStatement == null) {
             return "";
         }
-        return sqlStatement.toSql();
+        long start = startPhase();
+        String sql = sqlStatement.toSql();
+        recordPhase(SqlTransformMetrics.PHASE_RENDER, start, sql.length());
+        if (trace != null) {
+            trace.finish(classify(sqlStatement.originalSql), sqlStatement.originalSql.getSource());
+        }
+        return sql;
+    }
+
+    /**
+     * 把转换后的SQL直接写入out，不生成完整的字符串
+     * 超大语句（如几十万项的IN列表、大批量INSERT）配合 {@link SqlChannelWriter} 边生成边编码写入通道，
+     * 没有改写过的子句和原样输出的语句直接从原始SQL复制
+     * @param out 输出，写入的内容与toSqlStr相同
+     */
+    public void writeSql(Appendable out) throws IOException {
+        if (sqlStatement == null) {
+            return;
+        }
+        long start = startPhase();
+        sqlStatement.writeTo(out);
+        recordPhase(SqlTransformMetrics.PHASE_RENDER, start);
+        if (trace != null) {
+            trace.finish(classify(sqlStatement.originalSql), sqlStatement.originalSql.getSource());
+        }
     }
 
     @Override
     public void 所有字段下划线转驼峰() {
         if (sqlStatement != null) {
-            sqlStatement.convertFieldsToCamelCase();
+            long start = startPhase();
+            definedAliases = collectDefinedAliases();
+            definedCteNames = collectDefinedCteNames();
+            sqlStatement.forEachScope(SqlStatement::convertFieldsToCamelCase);
+            recordPhase(SqlTransformMetrics.PHASE_TO_CAMEL_CASE, start);
         }
     }
 
     @Override
     public void 所有字段驼峰转下划线() {
         if (sqlStatement != null) {
-            sqlStatement.convertFieldsToUnderscore();
+            long start = startPhase();
+            definedAliases = collectDefinedAliases();
+            definedCteNames = collectDefinedCteNames();
+            sqlStatement.forEachScope(SqlStatement::convertFieldsToUnderscore);
+            recordPhase(SqlTransformMetrics.PHASE_TO_UNDERSCORE, start);
         }
     }
 
+    // 语句中所有作用域定义的列别名，外层查询和ORDER BY等处对别名的引用不做转换
+    private Set<String> collectDefinedAliases() {
+        Set<String> aliases = new HashSet<>();
+        sqlStatement.forEachScope(scope -> scope.collectAliases(aliases));
+        return aliases;
+    }
+
+    private Set<String> collectDefinedCteNames() {
+        Set<String> names = new HashSet<>();
+        sqlStatement.forEachScope(scope -> scope.collectCteNames(names));
+        return names;
+    }
+
     @Override
     public void addTableNameMap(String oldName, String newName) {
         tableNameMapping.put(oldName.toLowerCase(), newName);
         if (sqlStatement != null) {
+            long start = startPhase();
             sqlStatement.applyTableMapping(tableNameMapping);
+            recordPhase(SqlTransformMetrics.PHASE_TABLE_MAPPING, start);
         }
     }
 
-    private SqlStatement parseSql(String sql) {
+    @Override
+    public void addTableNameMaps(Map<String, String> mappings) {
+        for (Map.Entry<String, String> entry : mappings.entrySet()) {
+            tableNameMapping.put(entry.getKey().toLowerCase(), entry.getValue());
+        }
+        // 全部加入后只遍历一次语句
+        if (sqlStatement != null) {
+            long start = startPhase();
+            sqlStatement.applyTableMapping(tableNameMapping);
+            recordPhase(SqlTransformMetrics.PHASE_TABLE_MAPPING, start);
+        }
+    }
+
+    @Override
+    public void setTableNameDictionary(TableNameDictionary dictionary) {
+        this.tableNameDictionary = dictionary;
+        if (sqlStatement != null && dictionary != null) {
+            long start = startPhase();
+            sqlStatement.applyTableMapping(dictionary::lookup);
+            recordPhase(SqlTransformMetrics.PHASE_TABLE_MAPPING, start);
+        }
+    }
+
+    @Override
+    public void addTableNameRule(String pattern, String replacement) {
+        addTableNameRules(Collections.singletonMap(pattern, replacement));
+    }
+
+    @Override
+    public void addTableNameRules(Map<String, String> rules) {
+        tableNameRules.putAll(rules);
+        // 全部规则一起编译，匹配耗时与规则数量无关
+        compiledTableNameRules = TableNameDictionary.builder().putAll(tableNameRules).build();
+        if (sqlStatement != null) {
+            long start = startPhase();
+            TableNameDictionary added = TableNameDictionary.builder().putAll(rules).build();
+            sqlStatement.applyTableMapping(added::lookup);
+            recordPhase(SqlTransformMetrics.PHASE_TABLE_MAPPING, start);
+        }
+    }
+
+    private String lookupConfiguredTableName(String table) {
+        String newName = tableNameDictionary == null ? null : tableNameDictionary.lookup(table);
+        if (newName == null && compiledTableNameRules != null) {
+            newName = compiledTableNameRules.lookup(table);
+        }
+        return newName;
+    }
+
+    // 只看开头的关键字判断语句类型，不支持的类型返回null
+    private static String classify(SqlSpan sql) {
+        String text = sql.getSource();
+        int start = sql.getStart();
+        if (start < sql.getEnd() && text.charAt(start) == '(') {
+            return "SELECT";
+        }
+        for (String type : STATEMENT_TYPES) {
+            if (SqlScanner.matchKeyword(text, start, type) != -1) {
+                return type;
+            }
+        }
+        return null;
+    }
+
+    // 不支持或解析失败的语句原样输出，错误记录到解析结果中
+    private SqlStatement parseSql(SqlSpan sql) {
         sql = sql.trim();
-        String upperSql = sql.toUpperCase();
+        String type = classify(sql);
+        if (type == null) {
+            parseErrors.add(new SqlParseException("Unsupported SQL type", sql.getStart()));
+            return new PassThroughStatement(sql);
+        }
 
-        if (upperSql.startsWith("SELECT")) {
-            return new SelectStatement(sql);
-        } else if (upperSql.startsWith("INSERT")) {
-            return new InsertStatement(sql);
-        } else if (upperSql.startsWith("UPDATE")) {
-            return new UpdateStatement(sql);
-        } else if (upperSql.startsWith("DELETE")) {
-            return new DeleteStatement(sql);
+        SqlStatement statement;
+        switch (type) {
+            case "WITH":
+                statement = new WithStatement(sql);
+                break;
+            case "SELECT":
+                if (SqlScanner.indexOfAnyKeyword(sql.getSource(), SET_OPERATORS, sql.getStart(), sql.getEnd()) != -1) {
+                    statement = new CompoundStatement(sql);
+                } else {
+                    statement = new SelectStatement(sql);
+                }
+                break;
+            case "INSERT":
+                statement = new InsertStatement(sql);
+                break;
+            case "UPDATE":
+                statement = new UpdateStatement(sql);
+                break;
+            default:
+                statement = new DeleteStatement(sql);
+                break;
+        }
+        if (statement.parseError != null) {
+            parseErrors.add(statement.parseError);
+            return new PassThroughStatement(sql);
         }
+        return statement;
+    }
 
-        throw new UnsupportedOperationException("Unsupported SQL type");
+    // 解析嵌套作用域（子查询、CTE、集合运算分支），相同文本复用已解析的语句
+    private SqlStatement parseScope(SqlSpan sql) {
+        SqlSpan key = sql.trim();
+        // 去掉包裹整个语句的多余括号
+        while (key.length() > 0 && key.charAt(0) == '('
+                && SqlScanner.matchParen(key.getSource(), key.getStart()) == key.getEnd() - 1) {
+            key = key.subSequence(1, key.length() - 1).trim();
+        }
+        SqlStatement statement = parsedScopes.get(key);
+        if (statement == null) {
+            scopeCacheMisses++;
+            statement = parseSql(key);
+            parsedScopes.put(key, statement);
+        } else {
+            scopeCacheHits++;
+        }
+        return statement;
     }
 
     // 工具方法：下划线转驼峰
@@ -101,57 +402,334 @@ public class SqlFactory implements SelectAsName, SqlParser, FieldEditor, TableNa
         return result.toString();
     }
 
+    private static Function<String, String> nameConverter(boolean toCamelCase) {
+        return toCamelCase ? SqlFactory::underscoreToCamelCase : SqlFactory::camelCaseToUnderscore;
+    }
+
     @Override
     public void 所有查询字段软添加驼峰别名() {
-        if (sqlStatement != null && sqlStatement instanceof SelectStatement) {
-            ((SelectStatement) sqlStatement).addCamelCaseAliases();
+        // 只处理输出列，派生表和CTE的列名被外层引用，添加别名会破坏引用
+        if (sqlStatement != null) {
+            long start = startPhase();
+            sqlStatement.addCamelCaseAliases();
+            recordPhase(SqlTransformMetrics.PHASE_CAMEL_CASE_ALIAS, start);
+        }
+    }
+
+    @Override
+    public void rewrite(SqlRewritePlan plan) {
+        if (sqlStatement == null) {
+            return;
+        }
+        long start = startPhase();
+        Function<String, String> converter = null;
+        if (plan.getNaming() != SqlRewritePlan.Naming.NONE) {
+            converter = nameConverter(plan.getNaming() == SqlRewritePlan.Naming.CAMEL_CASE);
+            definedAliases = collectDefinedAliases();
+            definedCteNames = collectDefinedCteNames();
         }
+        // 表名映射和列名转换在同一次遍历中完成
+        sqlStatement.rewrite(plan.getTableMapping(), converter);
+        // 只涉及最外层的输出列
+        if (plan.isCamelCaseAliases()) {
+            sqlStatement.addCamelCaseAliases();
+        }
+        recordPhase(SqlTransformMetrics.PHASE_REWRITE, start);
     }
 
     // SQL语句基类
     abstract class SqlStatement {
-        protected String originalSql;
+        // 语句在原始SQL中的片段，嵌套语句与外层共用同一个字符串
+        protected SqlSpan originalSql;
         protected List<String> fields = new ArrayList<>();
         protected Map<String, String> tableAliases = new HashMap<>();
         protected List<String> tables = new ArrayList<>();
+        // 子句中的子查询，原位置用占位符代替
+        protected List<SqlStatement> subqueries = new ArrayList<>();
+        // 解析失败的原因，解析成功时为null；失败的语句由parseSql换成原样输出
+        protected SqlParseException parseError;
 
-        public SqlStatement(String sql) {
+        public SqlStatement(SqlSpan sql) {
             this.originalSql = sql;
             try {
                 parse();
-            } catch (Exception e) {
-                System.err.println("Failed to parse SQL: " + sql);
-                e.printStackTrace();
-                // 保留原始SQL，避免后续空指针
-                fields = new ArrayList<>();
-                tables = new ArrayList<>();
+            } catch (SqlParseException e) {
+                parseError = e;
+            } catch (RuntimeException e) {
+                parseError = new SqlParseException("Failed to parse SQL: " + e, sql.getStart(), e);
             }
         }
 
         protected abstract void parse();
 
-        public abstract String toSql();
+        public String toSql() {
+            StringBuilder sql = new StringBuilder(originalSql.length() + 16);
+            try {
+                writeTo(sql);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return sql.toString();
+        }
+
+        // 把语句写入out，子查询和没有改写过的子句直接写入，不生成中间字符串
+        protected abstract void writeTo(Appendable sql) throws IOException;
 
         public void convertFieldsToCamelCase() {
-            fields = fields.stream()
-                    .map(SqlFactory::underscoreToCamelCase)
-                    .collect(Collectors.toList());
+            convertColumnNames(SqlFactory::underscoreToCamelCase, Collections.emptyMap());
         }
 
         public void convertFieldsToUnderscore() {
-            fields = fields.stream()
-                    .map(SqlFactory::camelCaseToUnderscore)
-                    .collect(Collectors.toList());
+            convertColumnNames(SqlFactory::camelCaseToUnderscore, Collections.emptyMap());
+        }
+
+        /**
+         * 转换当前作用域的列名，同一次扫描中按renames改写限定名
+         * @param converter 单个列名的转换
+         * @param renames 限定名改写（旧限定名小写 -> 新表名），没有时为空
+         */
+        protected void convertColumnNames(Function<String, String> converter, Map<String, String> renames) {
+            fields.replaceAll(converter::apply);
+            if (!renames.isEmpty()) {
+                rewriteClauses(text -> rewriteQualifiers(text, renames));
+            }
+        }
+
+        // 对当前作用域中可能引用列的每段文本（字段表达式、ON条件、各子句）应用同一个改写
+        protected void rewriteClauses(UnaryOperator<String> rewriter) {
         }
 
+        // 对当前语句及所有嵌套作用域应用表名映射，限定列名（如 old_table.col）一并改写
         public void applyTableMapping(Map<String, String> mapping) {
+            applyTableMapping(table -> mapping.get(table.toLowerCase()));
+        }
+
+        /**
+         * 对当前语句及所有嵌套作用域应用表名映射，整棵语句树只遍历一次
+         * @param mapping 根据原表名返回新表名，不需要映射时返回null
+         */
+        public void applyTableMapping(Function<String, String> mapping) {
+            rewrite(mapping, null);
+        }
+
+        /**
+         * 一次遍历所有作用域，同时完成表名映射、限定名改写和列名转换
+         * 每个作用域的每段文本只扫描一次
+         * @param mapping 表名映射，不映射时为null
+         * @param converter 列名转换，不转换时为null
+         */
+        public void rewrite(Function<String, String> mapping, Function<String, String> converter) {
+            rewriteScope(mapping, converter, Collections.emptySet(), Collections.emptyMap(),
+                    Collections.newSetFromMap(new IdentityHashMap<>()));
+        }
+
+        private void rewriteScope(Function<String, String> mapping, Function<String, String> converter,
+                                  Set<String> cteNames, Map<String, String> outerRenames, Set<SqlStatement> visited) {
+            if (!visited.add(this)) {
+                return;
+            }
+            Map<String, String> renames = mapping == null ? outerRenames : mapScopeTables(mapping, cteNames, outerRenames);
+            if (converter != null) {
+                convertColumnNames(converter, renames);
+            } else if (!renames.isEmpty()) {
+                rewriteClauses(text -> rewriteQualifiers(text, renames));
+            }
+            Set<String> visibleCteNames = visibleCteNames(cteNames);
+            for (SqlStatement child : children()) {
+                child.rewriteScope(mapping, converter, visibleCteNames, renames, visited);
+            }
+        }
+
+        /**
+         * 在当前作用域内映射表名，子句中的限定名由调用方统一改写
+         * @param mapping 表名映射，根据原表名返回新表名
+         * @param cteNames 可见的CTE名称（小写），与CTE同名的引用不是真实表，不映射
+         * @param outerRenames 外层作用域的限定名改写，用于关联子查询中引用外层表的列
+         * @return 本作用域生效的限定名改写（旧限定名小写 -> 新表名）
+         */
+        protected Map<String, String> mapScopeTables(Function<String, String> mapping, Set<String> cteNames,
+                                                     Map<String, String> outerRenames) {
+            Map<String, String> renames = new HashMap<>(outerRenames);
             for (int i = 0; i < tables.size(); i++) {
                 String table = tables.get(i);
-                String newName = mapping.get(table.toLowerCase());
+                String newName = mapTableName(table, mapping, cteNames);
                 if (newName != null) {
                     tables.set(i, newName);
+                    putRename(renames, table, newName);
+                }
+            }
+            return renames;
+        }
+
+        // 子作用域可见的CTE名称
+        protected Set<String> visibleCteNames(Set<String> inherited) {
+            return inherited;
+        }
+
+        // 带引号的表名（如 `t_user`、"db"."t_user"）去掉引号后查找映射，新表名按原来的引号写回
+        protected String mapTableName(String table, Function<String, String> mapping, Set<String> cteNames) {
+            char quote = quoteOf(table);
+            String name = quote == 0 ? table : table.replace(String.valueOf(quote), "");
+            if (!cteNames.isEmpty() && cteNames.contains(name.toLowerCase())) {
+                return null;
+            }
+            String newName = mapping.apply(name);
+            return newName == null || quote == 0 ? newName : quoteName(newName, quote);
+        }
+
+        // 没有别名的表以表名作为限定名，带库名的表也可以只用表名限定；限定名按去掉引号后的名称匹配
+        protected void putRename(Map<String, String> renames, String oldName, String newName) {
+            String key = unquoteQualifier(oldName);
+            renames.put(key, newName);
+            int dot = key.lastIndexOf('.');
+            if (dot != -1) {
+                renames.put(key.substring(dot + 1), newName);
+            }
+        }
+
+        // 把文本中 旧限定名.列名 改写为 新表名.列名，引号内的内容不处理
+        protected String rewriteQualifiers(String text, Map<String, String> renames) {
+            if (text == null || text.isEmpty() || renames.isEmpty() || text.indexOf('.') == -1) {
+                return text;
+            }
+            StringBuilder result = new StringBuilder(text.length() + 16);
+            int i = 0;
+            while (i < text.length()) {
+                char c = text.charAt(i);
+                if (Character.isLetter(c) || c == '_' || ((c == '"' || c == '`') && isQualifiedName(text, i))) {
+                    // 读取 a.b.c 形式的标识符链，带引号的限定名去掉引号后匹配
+                    int end = SqlScanner.scanName(text, i);
+                    int lastDot = SqlScanner.lastIndexOf(text, '.', i, end);
+                    String newQualifier = lastDot > i ? renames.get(unquoteQualifier(text.substring(i, lastDot))) : null;
+                    if (newQualifier != null) {
+                        result.append(newQualifier).append(text, lastDot, end);
+                    } else {
+                        result.append(text, i, end);
+                    }
+                    i = end;
+                } else if (SqlScanner.isLexicalStart(c)) {
+                    // 引号和注释中的内容原样保留
+                    int end = SqlScanner.skipLexical(text, i);
+                    result.append(text, i, end + 1);
+                    i = end + 1;
+                } else if (SqlScanner.isWordChar(c)) {
+                    int end = SqlScanner.scanWord(text, i);
+                    result.append(text, i, end);
+                    i = end;
+                } else {
+                    result.append(c);
+                    i++;
+                }
+            }
+            return result.toString();
+        }
+
+        // pos处的引号标识符后面紧跟 . 时是限定名，否则按引号内容原样保留
+        private boolean isQualifiedName(String text, int pos) {
+            int end = SqlScanner.skipQuoted(text, pos) + 1;
+            return end < text.length() && text.charAt(end) == '.';
+        }
+
+        private String unquoteQualifier(String qualifier) {
+            char quote = quoteOf(qualifier);
+            return (quote == 0 ? qualifier : qualifier.replace(String.valueOf(quote), "")).toLowerCase();
+        }
+
+        // 为输出列添加驼峰别名，只有查询语句支持
+        public void addCamelCaseAliases() {
+        }
+
+        // 收集当前作用域定义的列别名（小写）
+        protected void collectAliases(Set<String> aliases) {
+        }
+
+        // 收集当前作用域定义的CTE名称（小写）
+        protected void collectCteNames(Set<String> names) {
+        }
+
+        // 直接嵌套的作用域：子查询、派生表、CTE、集合运算的各个分支
+        protected List<SqlStatement> children() {
+            return subqueries;
+        }
+
+        // 遍历当前语句及所有嵌套作用域，被多处引用的同一子查询只访问一次
+        public void forEachScope(Consumer<SqlStatement> action) {
+            forEachScope(action, Collections.newSetFromMap(new IdentityHashMap<>()));
+        }
+
+        private void forEachScope(Consumer<SqlStatement> action, Set<SqlStatement> visited) {
+            if (!visited.add(this)) {
+                return;
+            }
+            action.accept(this);
+            for (SqlStatement child : children()) {
+                child.forEachScope(action, visited);
+            }
+        }
+
+        // 把文本中 (SELECT ...) / (WITH ...) 形式的子查询解析为嵌套语句，原位置替换为占位符
+        protected String extractSubqueries(String text) {
+            if (text == null || text.indexOf('(') == -1) {
+                return text;
+            }
+            return extractSubqueries(SqlSpan.of(text));
+        }
+
+        // 子查询直接在原始SQL的片段上解析，只生成替换了占位符的外层文本
+        protected String extractSubqueries(SqlSpan span) {
+            String text = span.getSource();
+            int to = span.getEnd();
+            StringBuilder result = null;
+            int last = span.getStart();
+            for (int i = last; i < to; i++) {
+                char c = text.charAt(i);
+                if (SqlScanner.isLexicalStart(c)) {
+                    i = SqlScanner.skipLexical(text, i);
+                } else if (c == '(') {
+                    int start = SqlScanner.skipSpaces(text, i + 1);
+                    if (SqlScanner.matchKeyword(text, start, "SELECT") != -1
+                            || SqlScanner.matchKeyword(text, start, "WITH") != -1) {
+                        int end = SqlScanner.matchParen(text, i);
+                        if (result == null) {
+                            result = new StringBuilder(span.length());
+                        }
+                        result.append(text, last, i + 1);
+                        result.append(SUBQUERY_MARK).append(subqueries.size()).append(SUBQUERY_MARK);
+                        subqueries.add(parseScope(new SqlSpan(text, start, end)));
+                        last = end;
+                        i = end - 1;
+                    }
                 }
             }
+            if (result == null) {
+                return span.toString();
+            }
+            result.append(text, last, to);
+            return result.toString();
+        }
+
+        // 写入文本，占位符处写入对应的子查询SQL
+        protected void writeRestored(Appendable sql, String text) throws IOException {
+            int last = 0;
+            int i = text.indexOf(SUBQUERY_MARK);
+            while (i != -1) {
+                int end = text.indexOf(SUBQUERY_MARK, i + 1);
+                sql.append(text, last, i);
+                subqueries.get(Integer.parseInt(text.substring(i + 1, end))).writeTo(sql);
+                last = end + 1;
+                i = text.indexOf(SUBQUERY_MARK, last);
+            }
+            sql.append(text, last, text.length());
+        }
+
+        // 依次写入列表项，项之间用 ", " 分隔
+        protected void writeList(Appendable sql, List<String> items) throws IOException {
+            for (int i = 0; i < items.size(); i++) {
+                if (i > 0) {
+                    sql.append(", ");
+                }
+                writeRestored(sql, items.get(i));
+            }
         }
 
         protected String processField(String field) {
@@ -166,824 +744,1390 @@ public class SqlFactory implements SelectAsName, SqlParser, FieldEditor, TableNa
 
     // SELECT语句实现
     class SelectStatement extends SqlStatement {
-        private String whereClause = "";
-        private String groupByClause = "";
-        private String orderByClause = "";
-        private String havingClause = "";
-        private boolean hasDistinct = false;
+        // 以下字段在父类构造函数中解析赋值，不能有初始值，否则会被字段初始化覆盖
+        // WHERE、GROUP BY、HAVING、ORDER BY以及分页、加锁子句，与SELECT_CLAUSES对应，只记录原文位置，需要改写时才解析
+        private ClauseSpan[] clauses;
+        private boolean hasDistinct;
+        private FromClause fromClause;
 
-        public SelectStatement(String sql) {
+        public SelectStatement(SqlSpan sql) {
             super(sql);
-            // 由于Java内部类字段初始化顺序问题，需要在构造函数中重新解析
-            reparseSelectData();
+            // 解析失败时保证子句不为null
+            if (clauses == null) {
+                clauses = new ClauseSpan[SELECT_CLAUSES.length];
+                for (int i = 0; i < clauses.length; i++) {
+                    clauses[i] = new ClauseSpan("", 0, 0);
+                }
+            }
         }
 
-        private void reparseSelectData() {
-            // 重新解析SELECT语句的各个子句
-            String upperSql = originalSql.toUpperCase();
+        @Override
+        protected void parse() {
+            // 在原始SQL上按位置解析，不截取子串
+            String sql = originalSql.getSource();
+            int start = originalSql.getStart();
+            int end = originalSql.getEnd();
 
-            // 找到各个子句的位置
-            int fromIndex = upperSql.indexOf(" FROM ");
-            if (fromIndex != -1) {
-                String afterFrom = originalSql.substring(fromIndex + 6);
-                reparseFromClause(afterFrom);
+            // 只识别顶层的FROM，子查询中的FROM不影响外层
+            int fromIndex = SqlScanner.indexOfKeyword(sql, "FROM", start, end);
+            if (fromIndex == -1) {
+                throw new SqlParseException("Invalid SELECT statement: missing FROM", end);
             }
+
+            // 检查DISTINCT
+            int selectEnd = SqlScanner.matchKeyword(sql, SqlScanner.skipSpaces(sql, start), "SELECT");
+            if (selectEnd == -1) {
+                throw new SqlParseException("Invalid SELECT statement: " + originalSql, start);
+            }
+            int distinctEnd = SqlScanner.matchKeyword(sql, SqlScanner.skipSpaces(sql, selectEnd), "DISTINCT");
+            hasDistinct = distinctEnd != -1 && distinctEnd <= fromIndex;
+
+            // 解析SELECT和FROM之间的字段
+            parseFields(sql, hasDistinct ? distinctEnd : selectEnd, fromIndex);
+
+            // 解析FROM后的部分
+            parseFromClause(sql, fromIndex + 4, end);
         }
 
-        private void reparseFromClause(String fromClause) {
-            String upperClause = fromClause.toUpperCase();
+        private void parseFromClause(String fromClause, int from, int to) {
+            // 一次扫描找到各个顶层子句的位置
+            String[] keywords = SELECT_CLAUSES;
+            int[] positions = SqlScanner.indexOfKeywords(fromClause, keywords, from, to);
+            int endPos = to;
+            for (int position : positions) {
+                if (position != -1) endPos = Math.min(endPos, position);
+            }
 
-            // 找到各个子句的位置
-            int wherePos = upperClause.indexOf(" WHERE ");
-            int groupByPos = upperClause.indexOf(" GROUP BY ");
-            int havingPos = upperClause.indexOf(" HAVING ");
-            int orderByPos = upperClause.indexOf(" ORDER BY ");
+            // 表部分
+            parseTables(fromClause, from, endPos);
 
-            // 提取WHERE子句
-            if (wherePos != -1) {
-                int whereStart = wherePos + 7; // " WHERE ".length() = 7
-                int whereEnd = fromClause.length();
-                if (groupByPos > wherePos) whereEnd = groupByPos;
-                else if (orderByPos > wherePos) whereEnd = orderByPos;
+            // 只记录各个子句内容的位置（不包含关键字），子句在下一个子句开始处结束
+            clauses = new ClauseSpan[keywords.length];
+            for (int i = 0; i < keywords.length; i++) {
+                if (positions[i] == -1) {
+                    clauses[i] = new ClauseSpan(fromClause, 0, 0);
+                    continue;
+                }
+                int start = SqlScanner.matchKeyword(fromClause, positions[i], keywords[i]);
+                int end = to;
+                for (int position : positions) {
+                    if (position > positions[i]) end = Math.min(end, position);
+                }
+                clauses[i] = new ClauseSpan(fromClause, start, end);
+            }
+        }
 
-                whereClause = fromClause.substring(whereStart, whereEnd).trim();
+        /**
+         * 截取子句并提取其中的子查询，只在第一次需要改写时执行
+         * 子句在fromSql时没有解析，其中的错误（如括号不匹配）到这里才发现：记入解析结果，子句原样输出，返回null
+         */
+        private String resolveClause(ClauseSpan clause) {
+            if (!clause.isResolved() && !clause.isFailed()) {
+                SqlSpan span = clause.getSpan();
+                try {
+                    clause.setText(withLineBreak(extractSubqueries(span), span));
+                } catch (SqlParseException e) {
+                    clause.setFailed();
+                    parseErrors.add(e);
+                } catch (RuntimeException e) {
+                    clause.setFailed();
+                    parseErrors.add(new SqlParseException("Failed to parse SQL: " + e, span.getStart(), e));
+                }
             }
+            return clause.getText();
+        }
 
-            // 提取其他子句
-            if (groupByPos != -1) {
-                int groupByStart = groupByPos + 10; // " GROUP BY ".length() = 10
-                int groupByEnd = fromClause.length();
-                if (havingPos > groupByPos) groupByEnd = havingPos;
-                else if (orderByPos > groupByPos) groupByEnd = orderByPos;
+        private void parseFields(String sql, int from, int to) {
+            // 按顶层逗号拆分，函数参数和子查询中的逗号不拆
+            for (SqlSpan field : SqlScanner.splitTopLevel(sql, ',', from, to)) {
+                // 保留完整的字段表达式（包括别名）
+                fields.add(withLineBreak(extractSubqueries(field), field));
+            }
+        }
 
-                groupByClause = fromClause.substring(groupByStart, groupByEnd).trim();
+        private void parseTables(String sql, int from, int to) {
+            // 解析为结构化的FROM子句，保留连接类型、ON条件、别名和派生表
+            fromClause = FromClause.parse(sql, from, to);
+            for (JoinItem item : fromClause.getItems()) {
+                TableRef table = item.getTable();
+                if (table.getDerivedTable() != null) {
+                    table.setSubquery(parseScope(table.getDerivedTable()));
+                }
+                if (item.getOnCondition() != null) {
+                    item.setOnCondition(extractSubqueries(item.getOnCondition()));
+                }
             }
+            refreshTables();
+        }
 
-            if (havingPos != -1) {
-                int havingStart = havingPos + 8; // " HAVING ".length() = 8
-                int havingEnd = fromClause.length();
-                if (orderByPos > havingPos) havingEnd = orderByPos;
+        @Override
+        protected List<SqlStatement> children() {
+            // 子句中的子查询在解析子句时才出现，没有括号的子句不可能包含子查询，不需要解析
+            for (int i = 0; i < REWRITTEN_CLAUSES; i++) {
+                if (clauses[i].mayContainSubquery()) {
+                    resolveClause(clauses[i]);
+                }
+            }
+            List<SqlStatement> children = new ArrayList<>(subqueries);
+            if (fromClause != null) {
+                for (JoinItem item : fromClause.getItems()) {
+                    if (item.getTable().getSubquery() != null) {
+                        children.add(item.getTable().getSubquery());
+                    }
+                }
+            }
+            return children;
+        }
 
-                havingClause = fromClause.substring(havingStart, havingEnd).trim();
+        // 根据FROM子句模型刷新表名列表和别名映射
+        private void refreshTables() {
+            tables.clear();
+            tableAliases.clear();
+            for (JoinItem item : fromClause.getItems()) {
+                TableRef table = item.getTable();
+                if (table.getName() != null) {
+                    tables.add(table.getName());
+                }
+                if (table.getAlias() != null) {
+                    tableAliases.put(table.getAlias(), table.getName() != null ? table.getName() : table.toSql());
+                }
             }
+        }
 
-            if (orderByPos != -1) {
-                int orderByStart = orderByPos + 10; // " ORDER BY ".length() = 10
-                orderByClause = fromClause.substring(orderByStart).trim();
+        public FromClause getFromClause() {
+            return fromClause;
+        }
+
+        @Override
+        protected Map<String, String> mapScopeTables(Function<String, String> mapping, Set<String> cteNames,
+                                                     Map<String, String> outerRenames) {
+            if (fromClause == null) {
+                return super.mapScopeTables(mapping, cteNames, outerRenames);
             }
+
+            // 符号表：本作用域定义的限定名遮蔽外层同名限定名
+            Map<String, String> renames = new HashMap<>(outerRenames);
+            for (JoinItem item : fromClause.getItems()) {
+                TableRef table = item.getTable();
+                if (table.getAlias() != null) {
+                    renames.remove(table.getAlias().toLowerCase());
+                } else if (table.getName() != null) {
+                    String key = table.getName().toLowerCase();
+                    renames.remove(key);
+                    renames.remove(key.substring(key.lastIndexOf('.') + 1));
+                }
+            }
+
+            // 映射表名，有别名的表列引用走别名，不需要改写
+            for (JoinItem item : fromClause.getItems()) {
+                TableRef table = item.getTable();
+                if (table.getName() == null) {
+                    continue;
+                }
+                String newName = mapTableName(table.getName(), mapping, cteNames);
+                if (newName != null) {
+                    if (table.getAlias() == null) {
+                        putRename(renames, table.getName(), newName);
+                    }
+                    table.setName(newName);
+                }
+            }
+            refreshTables();
+            return renames;
         }
 
         @Override
-        protected void parse() {
-            // 更精确的解析实现
-            String upperSql = originalSql.toUpperCase();
+        protected void rewriteClauses(UnaryOperator<String> rewriter) {
+            fields.replaceAll(rewriter);
+            if (fromClause != null) {
+                for (JoinItem item : fromClause.getItems()) {
+                    if (item.getOnCondition() != null) {
+                        item.setOnCondition(rewriter.apply(item.getOnCondition()));
+                    }
+                }
+            }
+            for (int i = 0; i < REWRITTEN_CLAUSES; i++) {
+                String text = clauses[i].isEmpty() ? null : resolveClause(clauses[i]);
+                if (text != null) {
+                    clauses[i].setText(rewriter.apply(text));
+                }
+            }
+        }
 
-            // 找到各个子句的位置
-            int fromIndex = upperSql.indexOf(" FROM ");
-            if (fromIndex == -1) {
-                throw new IllegalArgumentException("Invalid SELECT statement: missing FROM");
+        @Override
+        protected void writeTo(Appendable sql) throws IOException {
+            sql.append("SELECT ");
+
+            if (hasDistinct) {
+                sql.append("DISTINCT ");
             }
 
-            // 提取SELECT和FROM之间的字段
-            String selectPart = originalSql.substring(0, fromIndex);
-            String afterFrom = originalSql.substring(fromIndex + 6);
+            // 构建字段列表
+            if (fields.size() == 1 && fields.get(0).equals("*")) {
+                sql.append("*");
+            } else {
+                writeList(sql, fields);
+            }
 
-            // 检查DISTINCT
-            if (selectPart.toUpperCase().contains("SELECT DISTINCT")) {
-                hasDistinct = true;
-                selectPart = selectPart.substring(selectPart.toUpperCase().indexOf("DISTINCT") + 8);
+            sql.append(" FROM ");
+
+            // 构建FROM子句，保留连接方式和别名
+            if (fromClause != null) {
+                fromClause.writeTo(sql, this);
             } else {
-                selectPart = selectPart.substring(selectPart.toUpperCase().indexOf("SELECT") + 6);
+                writeList(sql, tables);
             }
 
-            // 解析字段
-            parseFields(selectPart.trim());
+            // 添加所有子句 - 子句内容不包含关键字，所以需要添加；没有改写过的子句直接复制原文
+            for (int i = 0; i < clauses.length; i++) {
+                ClauseSpan clause = clauses[i];
+                if (clause.isEmpty()) {
+                    continue;
+                }
+                sql.append(' ').append(SELECT_CLAUSES[i]).append(' ');
+                if (clause.isResolved()) {
+                    writeRestored(sql, clause.getText());
+                } else {
+                    clause.appendRawTo(sql);
+                    if (clause.endsWithLineComment()) {
+                        sql.append('\n');
+                    }
+                }
+            }
+        }
 
-            // 解析FROM后的部分
-            parseFromClause(afterFrom);
+        // 字段表达式和各子句中的列名，别名、函数名、关键字和常量保持不变
+        @Override
+        protected void convertColumnNames(Function<String, String> converter, Map<String, String> renames) {
+            Set<String> derivedQualifiers = derivedQualifiers();
+            rewriteClauses(text -> ColumnNameConverter.convert(text, converter, definedAliases, derivedQualifiers,
+                    renames));
+        }
+
+        // 引用派生表或CTE的限定名（小写），这些表的列可能是子查询中定义的别名，如 b.total_amount
+        private Set<String> derivedQualifiers() {
+            if (fromClause == null) {
+                return Collections.emptySet();
+            }
+            Set<String> qualifiers = new HashSet<>();
+            for (JoinItem item : fromClause.getItems()) {
+                TableRef table = item.getTable();
+                boolean derived = table.getSubquery() != null
+                        || table.getName() != null && definedCteNames.contains(table.getName().toLowerCase());
+                if (!derived) {
+                    continue;
+                }
+                if (table.getAlias() != null) {
+                    qualifiers.add(table.getAlias().toLowerCase());
+                } else if (table.getName() != null) {
+                    qualifiers.add(table.getName().toLowerCase());
+                }
+            }
+            return qualifiers;
+        }
+
+        @Override
+        protected void collectAliases(Set<String> aliases) {
+            for (String field : fields) {
+                ColumnNameConverter.collectAliases(field, aliases);
+            }
+        }
+
+        // 为所有查询字段添加驼峰别名
+        @Override
+        public void addCamelCaseAliases() {
+            if (fields.size() == 1 && fields.get(0).equals("*")) {
+                // 对于SELECT *，不添加别名
+                return;
+            }
+
+            for (int i = 0; i < fields.size(); i++) {
+                String field = fields.get(i);
+
+                // 跳过已经有别名的字段
+                Set<String> aliases = new HashSet<>();
+                ColumnNameConverter.collectAliases(field, aliases);
+                if (!aliases.isEmpty()) {
+                    continue;
+                }
+
+                // 只处理普通列引用，表达式没有可以转换的列名
+                String column = field.trim();
+                if (column.isEmpty() || !Character.isLetter(column.charAt(0))
+                        || SqlScanner.scanName(column, 0) != column.length() || column.indexOf('"') != -1) {
+                    continue;
+                }
+
+                // 提取实际的字段名（去掉表别名和库名）
+                String actualFieldName = column.substring(column.lastIndexOf('.') + 1);
+
+                // 已经是驼峰的字段不加别名
+                if (actualFieldName.indexOf('_') == -1 && !actualFieldName.equals(actualFieldName.toUpperCase())) {
+                    continue;
+                }
+
+                // 生成驼峰别名
+                String camelCaseAlias = underscoreToCamelCase(actualFieldName);
+
+                // 只有当驼峰别名与原字段名不同时才添加别名
+                if (!camelCaseAlias.equals(actualFieldName)) {
+                    fields.set(i, field + " AS " + camelCaseAlias);
+                }
+            }
+        }
+    }
+
+    // 集合运算语句：由UNION / INTERSECT / EXCEPT 连接的多个查询
+    class CompoundStatement extends SqlStatement {
+        // 以下字段在父类构造函数中解析赋值，不能有初始值
+        private List<SqlStatement> parts;
+        // operators.get(i) 连接第i个和第i+1个分支
+        private List<String> operators;
+        private List<Boolean> parenthesized;
+
+        public CompoundStatement(SqlSpan sql) {
+            super(sql);
+        }
+
+        @Override
+        protected void parse() {
+            parts = new ArrayList<>();
+            operators = new ArrayList<>();
+            parenthesized = new ArrayList<>();
+
+            String sql = originalSql.getSource();
+            int end = originalSql.getEnd();
+            int start = originalSql.getStart();
+            while (true) {
+                // 一次扫描找下一个顶层集合运算符
+                int next = SqlScanner.indexOfAnyKeyword(sql, SET_OPERATORS, start, end);
+                String operator = null;
+                if (next != -1) {
+                    for (String candidate : SET_OPERATORS) {
+                        if (SqlScanner.matchKeyword(sql, next, candidate) != -1) {
+                            operator = candidate;
+                            break;
+                        }
+                    }
+                }
+
+                SqlSpan part = new SqlSpan(sql, start, next == -1 ? end : next).trim();
+                parenthesized.add(part.length() > 0 && part.charAt(0) == '('
+                        && SqlScanner.matchParen(sql, part.getStart()) == part.getEnd() - 1);
+                parts.add(parseScope(part));
+                if (next == -1) {
+                    break;
+                }
+                operators.add(operator);
+                start = SqlScanner.matchKeyword(sql, next, operator);
+            }
+        }
+
+        @Override
+        protected void writeTo(Appendable sql) throws IOException {
+            if (parts == null || parts.isEmpty()) {
+                originalSql.appendTo(sql);
+                return;
+            }
+            for (int i = 0; i < parts.size(); i++) {
+                if (i > 0) {
+                    sql.append(" ").append(operators.get(i - 1)).append(" ");
+                }
+                if (parenthesized.get(i)) {
+                    sql.append("(");
+                    parts.get(i).writeTo(sql);
+                    sql.append(")");
+                } else {
+                    parts.get(i).writeTo(sql);
+                }
+            }
+        }
+
+        @Override
+        protected List<SqlStatement> children() {
+            return parts != null ? parts : Collections.emptyList();
+        }
+
+        // 每个分支的输出列都要加别名，保证各分支列名一致
+        @Override
+        public void addCamelCaseAliases() {
+            for (SqlStatement part : children()) {
+                part.addCamelCaseAliases();
+            }
+        }
+    }
+
+    // WITH语句：公共表表达式（CTE）加主查询，每个CTE只解析一次
+    class WithStatement extends SqlStatement {
+        // 以下字段在父类构造函数中解析赋值，不能有初始值
+        private boolean recursive;
+        private List<CommonTableExpression> ctes;
+        private SqlStatement mainStatement;
+
+        public WithStatement(SqlSpan sql) {
+            super(sql);
+        }
+
+        @Override
+        protected void parse() {
+            ctes = new ArrayList<>();
+            String sql = originalSql.getSource();
+            int length = originalSql.getEnd();
+            int pos = SqlScanner.skipSpaces(sql, SqlScanner.matchKeyword(sql, originalSql.getStart(), "WITH"));
+            int recursiveEnd = SqlScanner.matchKeyword(sql, pos, "RECURSIVE");
+            if (recursiveEnd != -1) {
+                recursive = true;
+                pos = SqlScanner.skipSpaces(sql, recursiveEnd);
+            }
+
+            while (true) {
+                CommonTableExpression cte = new CommonTableExpression();
+                int nameEnd = SqlScanner.scanName(sql, pos);
+                if (nameEnd == pos) {
+                    throw new SqlParseException("Expected CTE name at position " + pos, pos);
+                }
+                cte.setName(sql.substring(pos, nameEnd));
+                pos = SqlScanner.skipSpaces(sql, nameEnd);
+
+                // 可选的列名列表
+                if (pos < length && sql.charAt(pos) == '(') {
+                    int close = SqlScanner.matchParen(sql, pos);
+                    cte.setColumns(sql.substring(pos, close + 1));
+                    pos = SqlScanner.skipSpaces(sql, close + 1);
+                }
+
+                int asEnd = SqlScanner.matchKeyword(sql, pos, "AS");
+                if (asEnd == -1) {
+                    throw new SqlParseException("Expected AS at position " + pos, pos);
+                }
+                pos = SqlScanner.skipSpaces(sql, asEnd);
+                for (String modifier : new String[]{"NOT MATERIALIZED", "MATERIALIZED"}) {
+                    int modifierEnd = SqlScanner.matchKeyword(sql, pos, modifier);
+                    if (modifierEnd != -1) {
+                        cte.setModifier(modifier);
+                        pos = SqlScanner.skipSpaces(sql, modifierEnd);
+                        break;
+                    }
+                }
+
+                if (pos >= length || sql.charAt(pos) != '(') {
+                    throw new SqlParseException("Expected ( at position " + pos, pos);
+                }
+                int close = SqlScanner.matchParen(sql, pos);
+                cte.setBody(parseScope(new SqlSpan(sql, pos + 1, close)));
+                ctes.add(cte);
+
+                pos = SqlScanner.skipSpaces(sql, close + 1);
+                if (pos < length && sql.charAt(pos) == ',') {
+                    pos = SqlScanner.skipSpaces(sql, pos + 1);
+                } else {
+                    break;
+                }
+            }
+
+            mainStatement = parseScope(new SqlSpan(sql, pos, length));
+        }
+
+        @Override
+        protected void writeTo(Appendable sql) throws IOException {
+            if (mainStatement == null) {
+                originalSql.appendTo(sql);
+                return;
+            }
+            sql.append("WITH ");
+            if (recursive) {
+                sql.append("RECURSIVE ");
+            }
+            for (int i = 0; i < ctes.size(); i++) {
+                if (i > 0) {
+                    sql.append(", ");
+                }
+                CommonTableExpression cte = ctes.get(i);
+                sql.append(cte.getName());
+                if (cte.getColumns() != null) {
+                    sql.append(" ").append(cte.getColumns());
+                }
+                sql.append(" AS ");
+                if (cte.getModifier() != null) {
+                    sql.append(cte.getModifier()).append(" ");
+                }
+                sql.append("(");
+                cte.getBody().writeTo(sql);
+                sql.append(")");
+            }
+            sql.append(" ");
+            mainStatement.writeTo(sql);
+        }
+
+        @Override
+        protected List<SqlStatement> children() {
+            List<SqlStatement> children = new ArrayList<>();
+            if (ctes != null) {
+                for (CommonTableExpression cte : ctes) {
+                    children.add(cte.getBody());
+                }
+            }
+            if (mainStatement != null) {
+                children.add(mainStatement);
+            }
+            return children;
+        }
+
+        @Override
+        protected void collectCteNames(Set<String> names) {
+            if (ctes == null) {
+                return;
+            }
+            for (CommonTableExpression cte : ctes) {
+                names.add(cte.getName().toLowerCase());
+            }
+        }
+
+        // CTE的列名列表，如 WITH t (agency_id, total) AS (...)
+        @Override
+        protected void collectAliases(Set<String> aliases) {
+            if (ctes == null) {
+                return;
+            }
+            for (CommonTableExpression cte : ctes) {
+                if (cte.getColumns() != null) {
+                    String columns = cte.getColumns().trim();
+                    for (String column : SqlScanner.splitTopLevel(columns.substring(1, columns.length() - 1), ',')) {
+                        aliases.add(column.toLowerCase());
+                    }
+                }
+            }
+        }
+
+        @Override
+        public void addCamelCaseAliases() {
+            if (mainStatement != null) {
+                mainStatement.addCamelCaseAliases();
+            }
         }
 
-        private void parseFromClause(String fromClause) {
-            String upperClause = fromClause.toUpperCase();
+        // CTE名称在所有CTE体（递归CTE引用自身）和主查询中可见
+        @Override
+        protected Set<String> visibleCteNames(Set<String> inherited) {
+            Set<String> names = new HashSet<>(inherited);
+            for (CommonTableExpression cte : ctes) {
+                names.add(cte.getName().toLowerCase());
+            }
+            return names;
+        }
+    }
 
-            // 找到各个子句的位置
-            int wherePos = upperClause.indexOf(" WHERE ");
-            int groupByPos = upperClause.indexOf(" GROUP BY ");
-            int havingPos = upperClause.indexOf(" HAVING ");
-            int orderByPos = upperClause.indexOf(" ORDER BY ");
+    // 公共表表达式：name [(columns)] AS [modifier] (body)
+    static class CommonTableExpression {
+        private String name;
+        private String columns;
+        private String modifier;
+        private SqlStatement body;
 
-            // 确定表部分的结束位置
-            int endPos = fromClause.length();
-            if (wherePos != -1) endPos = Math.min(endPos, wherePos);
-            if (groupByPos != -1) endPos = Math.min(endPos, groupByPos);
-            if (orderByPos != -1) endPos = Math.min(endPos, orderByPos);
+        public String getName() {
+            return name;
+        }
 
-            // 提取表部分
-            String tablesPart = fromClause.substring(0, endPos).trim();
-            parseTables(tablesPart);
+        public void setName(String name) {
+            this.name = name;
+        }
 
-            // 提取各个子句 - 只保存子句内容，不包含关键字
-            if (wherePos != -1) {
-                int whereStart = wherePos + 7; // " WHERE ".length() = 7
-                int whereEnd = fromClause.length();
-                if (groupByPos > wherePos) whereEnd = groupByPos;
-                else if (orderByPos > wherePos) whereEnd = orderByPos;
+        public String getColumns() {
+            return columns;
+        }
+
+        public void setColumns(String columns) {
+            this.columns = columns;
+        }
+
+        public String getModifier() {
+            return modifier;
+        }
+
+        public void setModifier(String modifier) {
+            this.modifier = modifier;
+        }
 
-                whereClause = fromClause.substring(whereStart, whereEnd).trim();
+        public SqlStatement getBody() {
+            return body;
+        }
+
+        public void setBody(SqlStatement body) {
+            this.body = body;
+        }
+    }
+
+    // 表名使用的引号字符，没有引号时返回0
+    static char quoteOf(String name) {
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (c == '`' || c == '"') {
+                return c;
+            }
+        }
+        return 0;
+    }
+
+    // 给表名的每一部分加上引号，如 db.t_user -> `db`.`t_user`，已带引号的原样返回
+    static String quoteName(String name, char quote) {
+        if (name.indexOf(quote) != -1) {
+            return name;
+        }
+        StringBuilder result = new StringBuilder(name.length() + 4);
+        for (String part : name.split("\\.")) {
+            if (result.length() > 0) {
+                result.append('.');
             }
+            result.append(quote).append(part).append(quote);
+        }
+        return result.toString();
+    }
 
-            if (groupByPos != -1) {
-                int groupByStart = groupByPos + 10; // " GROUP BY ".length() = 10
-                int groupByEnd = fromClause.length();
-                if (havingPos > groupByPos) groupByEnd = havingPos;
-                else if (orderByPos > groupByPos) groupByEnd = orderByPos;
+    // 原文片段以 -- 注释结尾时在text后保留换行，否则拼接后注释会吞掉后面的内容
+    static String withLineBreak(String text, SqlSpan span) {
+        return SqlScanner.endsWithLineComment(span.getSource(), span.getStart(), span.getEnd()) ? text + "\n" : text;
+    }
 
-                groupByClause = fromClause.substring(groupByStart, groupByEnd).trim();
+    // 子句原文片段：解析时只记录起止位置，截取和提取子查询推迟到第一次改写
+    static class ClauseSpan {
+        private final String source;
+        private final int start;
+        private final int end;
+        // 解析后的文本（子查询已替换为占位符），未解析时为null
+        private String text;
+        // 解析失败，原样输出，不再重试
+        private boolean failed;
+
+        ClauseSpan(String source, int start, int end) {
+            // 去掉首尾空白
+            while (start < end && Character.isWhitespace(source.charAt(start))) {
+                start++;
             }
+            while (end > start && Character.isWhitespace(source.charAt(end - 1))) {
+                end--;
+            }
+            this.source = source;
+            this.start = start;
+            this.end = end;
+        }
+
+        public boolean isEmpty() {
+            return text != null ? text.isEmpty() : start == end;
+        }
 
-            if (havingPos != -1) {
-                int havingStart = havingPos + 8; // " HAVING ".length() = 8
-                int havingEnd = fromClause.length();
-                if (orderByPos > havingPos) havingEnd = orderByPos;
+        public boolean isResolved() {
+            return text != null;
+        }
+
+        public boolean isFailed() {
+            return failed;
+        }
 
-                havingClause = fromClause.substring(havingStart, havingEnd).trim();
+        public void setFailed() {
+            this.failed = true;
+        }
+
+        // 未解析的片段中有括号才可能包含子查询
+        public boolean mayContainSubquery() {
+            if (text != null || failed) {
+                return false;
+            }
+            for (int i = start; i < end; i++) {
+                if (source.charAt(i) == '(') {
+                    return true;
+                }
             }
+            return false;
+        }
+
+        public String getRawText() {
+            return source.substring(start, end);
+        }
+
+        public SqlSpan getSpan() {
+            return new SqlSpan(source, start, end);
+        }
+
+        public void appendRawTo(Appendable sql) throws IOException {
+            sql.append(source, start, end);
+        }
+
+        public boolean endsWithLineComment() {
+            return SqlScanner.endsWithLineComment(source, start, end);
+        }
+
+        public String getText() {
+            return text;
+        }
+
+        public void setText(String text) {
+            this.text = text;
+        }
+    }
+
+    // FROM子句模型：按顺序保存表引用以及它们之间的连接方式
+    static class FromClause {
+        // 可以出现在连接关键字序列中的单词
+        private static final Set<String> JOIN_WORDS = new HashSet<>(Arrays.asList(
+                "JOIN", "LEFT", "RIGHT", "FULL", "INNER", "OUTER", "CROSS", "NATURAL"));
+        // 不能作为表别名的单词
+        private static final Set<String> RESERVED_WORDS = new HashSet<>(Arrays.asList(
+                "JOIN", "LEFT", "RIGHT", "FULL", "INNER", "OUTER", "CROSS", "NATURAL", "ON", "USING",
+                "WHERE", "GROUP", "HAVING", "ORDER", "LIMIT", "OFFSET", "FETCH", "FOR", "UNION", "INTERSECT", "EXCEPT", "MINUS"));
+
+        private final List<JoinItem> items = new ArrayList<>();
+
+        public List<JoinItem> getItems() {
+            return items;
+        }
 
-            if (orderByPos != -1) {
-                int orderByStart = orderByPos + 10; // " ORDER BY ".length() = 10
-                orderByClause = fromClause.substring(orderByStart).trim();
+        static FromClause parse(String text) {
+            return parse(text, 0, text.length());
+        }
+
+        // 只解析text中[start, length)范围，表名、别名和条件按位置截取
+        static FromClause parse(String text, int start, int length) {
+            FromClause from = new FromClause();
+            // 各项之间的注释，挂到相邻的连接项或表引用上，输出时原样写回
+            StringBuilder comments = new StringBuilder();
+            int pos = SqlScanner.skipTrivia(text, start, comments);
+            String joinType = null;
+
+            while (pos < length) {
+                JoinItem item = new JoinItem();
+                item.setJoinType(joinType);
+                item.setLeadingComments(takeComments(comments));
+
+                // 表引用：派生表或表名
+                TableRef table = new TableRef();
+                if (text.charAt(pos) == '(') {
+                    int end = SqlScanner.matchParen(text, pos);
+                    table.setDerivedTable(new SqlSpan(text, pos + 1, end).trim());
+                    pos = end + 1;
+                } else {
+                    int end = SqlScanner.scanName(text, pos);
+                    if (end == pos) {
+                        throw new SqlParseException("Expected table name at position " + pos
+                                + " of FROM clause: " + text.substring(start, length), pos);
+                    }
+                    table.setName(text.substring(pos, end));
+                    pos = end;
+                }
+
+                // 别名
+                pos = SqlScanner.skipTrivia(text, pos, comments);
+                int wordEnd = Math.min(SqlScanner.scanWord(text, pos), length);
+                if (SqlScanner.matchKeyword(text, pos, "AS") == wordEnd) {
+                    pos = SqlScanner.skipTrivia(text, wordEnd, comments);
+                    int aliasEnd = SqlScanner.scanName(text, pos);
+                    table.setAlias(text.substring(pos, aliasEnd));
+                    table.setExplicitAs(true);
+                    pos = SqlScanner.skipTrivia(text, aliasEnd, comments);
+                } else if (wordEnd > pos && !isWordIn(RESERVED_WORDS, text, pos, wordEnd)) {
+                    table.setAlias(text.substring(pos, wordEnd));
+                    pos = SqlScanner.skipTrivia(text, wordEnd, comments);
+                }
+                table.setComments(takeComments(comments));
+                item.setTable(table);
+
+                // ON条件或USING列
+                wordEnd = Math.min(SqlScanner.scanWord(text, pos), length);
+                if (wordEnd > pos && SqlScanner.matchKeyword(text, pos, "ON") == wordEnd) {
+                    int end = findJoinBoundary(text, wordEnd, length);
+                    SqlSpan condition = new SqlSpan(text, wordEnd, end).trim();
+                    item.setOnCondition(withLineBreak(condition.toString(), condition));
+                    pos = end;
+                } else if (wordEnd > pos && SqlScanner.matchKeyword(text, pos, "USING") == wordEnd) {
+                    int usingStart = SqlScanner.skipTrivia(text, wordEnd);
+                    int end = usingStart < length && text.charAt(usingStart) == '('
+                            ? SqlScanner.matchParen(text, usingStart) + 1 : findJoinBoundary(text, usingStart, length);
+                    SqlSpan columns = new SqlSpan(text, usingStart, end).trim();
+                    item.setUsingColumns(withLineBreak(columns.toString(), columns));
+                    pos = end;
+                }
+                from.items.add(item);
+
+                // 下一个连接：逗号或JOIN关键字
+                pos = SqlScanner.skipTrivia(text, pos, comments);
+                item.setComments(takeComments(comments));
+                if (pos >= length) {
+                    break;
+                }
+                if (text.charAt(pos) == ',') {
+                    joinType = ",";
+                    pos = SqlScanner.skipTrivia(text, pos + 1, comments);
+                    continue;
+                }
+                int[] joinEnd = new int[1];
+                joinType = readJoinKeyword(text, pos, length, joinEnd, comments);
+                if (joinType == null) {
+                    throw new SqlParseException("Unexpected token at position " + pos
+                            + " of FROM clause: " + text.substring(start, length), pos);
+                }
+                pos = SqlScanner.skipTrivia(text, joinEnd[0], comments);
+            }
+
+            return from;
+        }
+
+        // 取出已收集的注释并清空，没有时返回null
+        private static String takeComments(StringBuilder comments) {
+            if (comments.length() == 0) {
+                return null;
+            }
+            String result = comments.toString();
+            comments.setLength(0);
+            return result;
+        }
+
+        /**
+         * 写入FROM子句
+         * @param sql 输出
+         * @param owner 所属语句，ON条件中的子查询占位符由它还原
+         */
+        public void writeTo(Appendable sql, SqlStatement owner) throws IOException {
+            for (JoinItem item : items) {
+                // 第一项前没有分隔符
+                if (",".equals(item.getJoinType())) {
+                    sql.append(", ");
+                } else if (item.getJoinType() != null) {
+                    sql.append(" ").append(item.getJoinType()).append(" ");
+                }
+                if (item.getLeadingComments() != null) {
+                    sql.append(item.getLeadingComments());
+                    if (!item.getLeadingComments().endsWith("\n")) {
+                        sql.append(" ");
+                    }
+                }
+                item.getTable().writeTo(sql);
+                if (item.getTable().getComments() != null) {
+                    sql.append(" ");
+                    sql.append(item.getTable().getComments());
+                }
+                if (item.getOnCondition() != null) {
+                    sql.append(" ON ");
+                    owner.writeRestored(sql, item.getOnCondition());
+                }
+                if (item.getUsingColumns() != null) {
+                    sql.append(" USING ").append(item.getUsingColumns());
+                }
+                if (item.getComments() != null) {
+                    sql.append(" ");
+                    sql.append(item.getComments());
+                }
             }
         }
 
-        private void parseFields(String fieldsStr) {
-            if (fieldsStr.trim().equals("*")) {
-                fields.add("*");
-                return;
-            }
-
-            String[] fieldArray = fieldsStr.split(",");
-            for (String field : fieldArray) {
-                field = field.trim();
-                // 保留完整的字段表达式（包括别名）
-                fields.add(field);
+        // 读取 [NATURAL] [LEFT|RIGHT|FULL] [OUTER] JOIN、INNER JOIN、CROSS JOIN，返回规范化后的关键字
+        // comments不为null时收集关键字之间的注释
+        private static String readJoinKeyword(String text, int pos, int limit, int[] end, StringBuilder comments) {
+            List<String> words = null;
+            while (true) {
+                pos = SqlScanner.skipTrivia(text, pos, comments);
+                int wordEnd = Math.min(SqlScanner.scanWord(text, pos), limit);
+                String word = wordEnd > pos ? findWord(JOIN_WORDS, text, pos, wordEnd) : null;
+                if (word == null) {
+                    return null;
+                }
+                if (words == null) {
+                    words = new ArrayList<>();
+                }
+                words.add(word);
+                pos = wordEnd;
+                if (word.equals("JOIN")) {
+                    end[0] = pos;
+                    return String.join(" ", words);
+                }
             }
         }
 
-        private void parseTables(String tablesStr) {
-            // 简单处理，支持逗号分隔的表和JOIN
-            String[] tableArray = tablesStr.split("\\s*,\\s*|\\s+JOIN\\s+", -1);
-            for (String tableExpr : tableArray) {
-                tableExpr = tableExpr.trim();
-                if (tableExpr.isEmpty()) continue;
-
-                // 提取表名（处理别名）
-                String[] parts = tableExpr.split("\\s+");
-                if (parts.length > 0) {
-                    String tableName = parts[0];
-                    tables.add(tableName);
-
-                    // 如果有别名
-                    if (parts.length > 1 && !parts[1].equalsIgnoreCase("ON")) {
-                        tableAliases.put(parts[1], tableName);
-                    }
+        // 不区分大小写地比较text中[start, end)和集合中的单词，不截取子串
+        private static String findWord(Set<String> words, String text, int start, int end) {
+            for (String word : words) {
+                if (word.length() == end - start && text.regionMatches(true, start, word, 0, word.length())) {
+                    return word;
                 }
             }
+            return null;
         }
 
-        @Override
-        public String toSql() {
-            StringBuilder sql = new StringBuilder("SELECT ");
-
-            if (hasDistinct) {
-                sql.append("DISTINCT ");
-            }
+        private static boolean isWordIn(Set<String> words, String text, int start, int end) {
+            return findWord(words, text, start, end) != null;
+        }
 
-            // 构建字段列表
-            if (fields.size() == 1 && fields.get(0).equals("*")) {
-                sql.append("*");
-            } else {
-                sql.append(String.join(", ", fields));
+        // ON条件在下一个顶层逗号或JOIN关键字处结束
+        private static int findJoinBoundary(String text, int pos, int limit) {
+            int depth = 0;
+            int[] end = new int[1];
+            for (int i = pos; i < limit; i++) {
+                char c = text.charAt(i);
+                if (SqlScanner.isLexicalStart(c)) {
+                    i = SqlScanner.skipLexical(text, i);
+                } else if (c == '(') {
+                    depth++;
+                } else if (c == ')') {
+                    depth--;
+                } else if (depth == 0 && c == ',') {
+                    return i;
+                } else if (depth == 0 && Character.isLetter(c)
+                        && (i == 0 || !SqlScanner.isWordChar(text.charAt(i - 1)))
+                        && readJoinKeyword(text, i, limit, end, null) != null) {
+                    return i;
+                }
             }
+            return limit;
+        }
+    }
 
-            sql.append(" FROM ");
+    // FROM子句中的一项：连接方式、表引用及连接条件
+    static class JoinItem {
+        // 第一项为null，逗号连接为","，否则为规范化后的JOIN关键字，如 LEFT OUTER JOIN
+        private String joinType;
+        private TableRef table;
+        private String onCondition;
+        private String usingColumns;
+        // 连接关键字和表引用之间的注释，-- 注释带换行
+        private String leadingComments;
+        // 连接条件之后、下一个连接之前的注释
+        private String comments;
+
+        public String getJoinType() {
+            return joinType;
+        }
 
-            // 构建表名列表
-            sql.append(String.join(", ", tables));
+        public void setJoinType(String joinType) {
+            this.joinType = joinType;
+        }
 
-            // 添加所有子句 - 现在子句内容不包含关键字，所以需要添加
-            if (!whereClause.isEmpty()) {
-                sql.append(" WHERE ").append(whereClause);
-            }
+        public TableRef getTable() {
+            return table;
+        }
 
-            if (!groupByClause.isEmpty()) {
-                sql.append(" GROUP BY ").append(groupByClause);
-            }
+        public void setTable(TableRef table) {
+            this.table = table;
+        }
 
-            if (!havingClause.isEmpty()) {
-                sql.append(" HAVING ").append(havingClause);
-            }
+        public String getOnCondition() {
+            return onCondition;
+        }
 
-            if (!orderByClause.isEmpty()) {
-                sql.append(" ORDER BY ").append(orderByClause);
-            }
+        public void setOnCondition(String onCondition) {
+            this.onCondition = onCondition;
+        }
 
-            return sql.toString();
+        public String getUsingColumns() {
+            return usingColumns;
         }
 
-        @Override
-        public void convertFieldsToCamelCase() {
-            if (fields.size() == 1 && fields.get(0).equals("*")) {
-                return;
-            }
+        public void setUsingColumns(String usingColumns) {
+            this.usingColumns = usingColumns;
+        }
 
-            // 转换SELECT子句中的字段
-            for (int i = 0; i < fields.size(); i++) {
-                String field = fields.get(i);
-                fields.set(i, convertFieldExpression(field, true));
-            }
+        public String getLeadingComments() {
+            return leadingComments;
+        }
 
-            // 转换WHERE子句中的字段名
-            whereClause = convertFieldNamesInClause(whereClause, true);
+        public void setLeadingComments(String leadingComments) {
+            this.leadingComments = leadingComments;
+        }
 
-            // 转换其他子句中的字段名
-            groupByClause = convertFieldNamesInClause(groupByClause, true);
-            orderByClause = convertFieldNamesInClause(orderByClause, true);
-            havingClause = convertFieldNamesInClause(havingClause, true);
+        public String getComments() {
+            return comments;
         }
 
-        @Override
-        public void convertFieldsToUnderscore() {
-            if (fields.size() == 1 && fields.get(0).equals("*")) {
-                return;
-            }
+        public void setComments(String comments) {
+            this.comments = comments;
+        }
+    }
 
-            // 转换SELECT子句中的字段
-            for (int i = 0; i < fields.size(); i++) {
-                String field = fields.get(i);
-                fields.set(i, convertFieldExpression(field, false));
-            }
+    // 表引用：普通表或派生表（子查询），可带别名
+    static class TableRef {
+        private String name;
+        // 派生表在原始SQL中的片段
+        private SqlSpan derivedTable;
+        private String alias;
+        private boolean explicitAs;
+        // 派生表解析后的语句
+        private SqlStatement subquery;
+        // 表名和别名之后的注释，由FROM子句写回，不属于表引用本身的SQL
+        private String comments;
+
+        public String getName() {
+            return name;
+        }
 
-            // 转换WHERE子句中的字段名
-            whereClause = convertFieldNamesInClause(whereClause, false);
+        public void setName(String name) {
+            this.name = name;
+        }
 
-            // 转换其他子句中的字段名
-            groupByClause = convertFieldNamesInClause(groupByClause, false);
-            orderByClause = convertFieldNamesInClause(orderByClause, false);
-            havingClause = convertFieldNamesInClause(havingClause, false);
+        public SqlSpan getDerivedTable() {
+            return derivedTable;
         }
 
-        // 转换字段表达式（包括处理别名）
-        private String convertFieldExpression(String fieldExpression, boolean toCamelCase) {
-            // 检查是否有别名
-            if (fieldExpression.toUpperCase().contains(" AS ")) {
-                String[] parts = fieldExpression.split("\\s+(?i)AS\\s+", 2);
-                String fieldPart = parts[0].trim();
-                String aliasPart = parts[1].trim();
+        public void setDerivedTable(SqlSpan derivedTable) {
+            this.derivedTable = derivedTable;
+        }
 
-                // 只转换字段名部分，保留别名不变
-                String convertedField = convertSingleField(fieldPart, toCamelCase);
-                return convertedField + " AS " + aliasPart;
-            } else {
-                // 没有别名，直接转换字段名
-                return convertSingleField(fieldExpression, toCamelCase);
-            }
+        public String getAlias() {
+            return alias;
         }
 
-        // 转换单个字段名
-        private String convertSingleField(String field, boolean toCamelCase) {
-            if (field.contains(".")) {
-                // 处理带表别名的字段，如 t.field_name
-                String[] parts = field.split("\\.", 2);
-                String tablePart = parts[0];
-                String fieldPart = parts[1];
+        public void setAlias(String alias) {
+            this.alias = alias;
+        }
 
-                String convertedFieldPart = toCamelCase ?
-                    underscoreToCamelCase(fieldPart) :
-                    camelCaseToUnderscore(fieldPart);
-                return tablePart + "." + convertedFieldPart;
-            } else {
-                // 普通字段名
-                return toCamelCase ?
-                    underscoreToCamelCase(field) :
-                    camelCaseToUnderscore(field);
-            }
+        public boolean isExplicitAs() {
+            return explicitAs;
         }
 
-        // 转换子句中的字段名
-        private String convertFieldNamesInClause(String clause, boolean toCamelCase) {
-            if (clause == null || clause.isEmpty()) {
-                return clause;
-            }
+        public void setExplicitAs(boolean explicitAs) {
+            this.explicitAs = explicitAs;
+        }
 
-            // 简单的字段名转换，匹配标识符模式
-            // 这个正则表达式匹配字段名（包括带表别名的字段）
-            Pattern fieldPattern = Pattern.compile("\\b([a-zA-Z_][a-zA-Z0-9_]*(?:\\.[a-zA-Z_][a-zA-Z0-9_]*)?)\\b");
-            Matcher matcher = fieldPattern.matcher(clause);
+        public SqlStatement getSubquery() {
+            return subquery;
+        }
 
-            StringBuffer result = new StringBuffer();
-            while (matcher.find()) {
-                String fieldName = matcher.group(1);
-                String convertedField;
+        public void setSubquery(SqlStatement subquery) {
+            this.subquery = subquery;
+        }
 
-                if (fieldName.contains(".")) {
-                    // 处理带表别名的字段，如 t.field_name
-                    String[] parts = fieldName.split("\\.", 2);
-                    String tablePart = parts[0];
-                    String fieldPart = parts[1];
+        public String getComments() {
+            return comments;
+        }
 
-                    // 只转换字段部分，不转换表别名
-                    String convertedFieldPart = toCamelCase ?
-                        underscoreToCamelCase(fieldPart) :
-                        camelCaseToUnderscore(fieldPart);
-                    convertedField = tablePart + "." + convertedFieldPart;
-                } else {
-                    // 普通字段名
-                    convertedField = toCamelCase ?
-                        underscoreToCamelCase(fieldName) :
-                        camelCaseToUnderscore(fieldName);
-                }
+        public void setComments(String comments) {
+            this.comments = comments;
+        }
 
-                matcher.appendReplacement(result, convertedField);
+        public String toSql() {
+            StringBuilder sql = new StringBuilder();
+            try {
+                writeTo(sql);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
             }
-            matcher.appendTail(result);
-
-            return result.toString();
+            return sql.toString();
         }
 
-        // 为所有查询字段添加驼峰别名
-        public void addCamelCaseAliases() {
-            if (fields.size() == 1 && fields.get(0).equals("*")) {
-                // 对于SELECT *，不添加别名
-                return;
+        public void writeTo(Appendable sql) throws IOException {
+            if (name != null) {
+                sql.append(name);
+            } else if (subquery != null) {
+                sql.append("(");
+                subquery.writeTo(sql);
+                sql.append(")");
+            } else {
+                sql.append("(").append(derivedTable).append(")");
             }
-
-            for (int i = 0; i < fields.size(); i++) {
-                String field = fields.get(i);
-
-                // 跳过已经有别名的字段
-                if (field.toUpperCase().contains(" AS ")) {
-                    continue;
-                }
-
-                // 提取实际的字段名（去掉表别名）
-                String actualFieldName;
-                if (field.contains(".")) {
-                    // 处理带表别名的字段，如 t.field_name
-                    String[] parts = field.split("\\.", 2);
-                    actualFieldName = parts[1];
-                } else {
-                    // 普通字段名
-                    actualFieldName = field;
-                }
-
-                // 生成驼峰别名
-                String camelCaseAlias = underscoreToCamelCase(actualFieldName);
-
-                // 只有当驼峰别名与原字段名不同时才添加别名
-                if (!camelCaseAlias.equals(actualFieldName)) {
-                    fields.set(i, field + " AS " + camelCaseAlias);
-                }
+            if (alias != null) {
+                sql.append(explicitAs ? " AS " : " ").append(alias);
             }
         }
     }
 
     // INSERT语句实现
     class InsertStatement extends SqlStatement {
-        private List<String> values = new ArrayList<>();
+        // 在父类构造函数中解析赋值，不能有初始值
+        private List<List<String>> rows;
+        // 最后一行值之后的部分，如 ON DUPLICATE KEY UPDATE ...，其中的列名与WHERE一样转换
+        private String tail;
 
-        public InsertStatement(String sql) {
+        public InsertStatement(SqlSpan sql) {
             super(sql);
-            // 由于Java内部类字段初始化顺序问题，需要在构造函数中重新解析VALUES
-            reparseValues();
-        }
-
-        private void reparseValues() {
-            // 确保values列表被初始化
-            if (values == null) {
-                values = new ArrayList<>();
-            } else {
-                values.clear(); // 清空可能存在的旧数据
+            if (rows == null) {
+                rows = new ArrayList<>();
             }
-
-            // 重新解析VALUES
-            Pattern insertPattern = Pattern.compile(
-                    "INSERT\\s+INTO\\s+([\\w\\.]+)\\s*\\(([^)]+)\\)\\s*VALUES\\s*\\(([^)]+)\\)",
-                    Pattern.CASE_INSENSITIVE | Pattern.DOTALL
-            );
-
-            Matcher matcher = insertPattern.matcher(originalSql);
-            if (matcher.find()) {
-                String valuesStr = matcher.group(3);
-                if (valuesStr != null) {
-                    List<String> parsedValues = parseValues(valuesStr);
-                    values.addAll(parsedValues);
-                }
+            if (tail == null) {
+                tail = "";
             }
         }
 
+        // 按位置扫描：INSERT INTO 表名 (字段列表) VALUES (值列表)[, (值列表)...] [其余部分]
         @Override
         protected void parse() {
-            // 确保values列表被初始化（解决Java内部类字段初始化顺序问题）
-            if (values == null) {
-                values = new ArrayList<>();
+            rows = new ArrayList<>();
+            tail = "";
+            String sql = originalSql.getSource();
+            int end = originalSql.getEnd();
+
+            int pos = SqlScanner.matchKeyword(sql, SqlScanner.skipSpaces(sql, originalSql.getStart()), "INSERT");
+            pos = pos == -1 ? -1 : SqlScanner.matchKeyword(sql, SqlScanner.skipSpaces(sql, pos), "INTO");
+            if (pos == -1) {
+                throw new SqlParseException("Unable to parse INSERT statement: " + originalSql, originalSql.getStart());
             }
+            pos = SqlScanner.skipSpaces(sql, pos);
+            int tableEnd = Math.min(SqlScanner.scanName(sql, pos), end);
+            if (tableEnd == pos) {
+                throw new SqlParseException("Expected table name at position " + pos, pos);
+            }
+            tables.add(sql.substring(pos, tableEnd));
 
-            // 更灵活的正则表达式，支持表名中的点号和空格
-            Pattern insertPattern = Pattern.compile(
-                    "INSERT\\s+INTO\\s+([\\w\\.]+)\\s*\\(([^)]+)\\)\\s*VALUES\\s*\\(([^)]+)\\)",
-                    Pattern.CASE_INSENSITIVE | Pattern.DOTALL
-            );
-
-            Matcher matcher = insertPattern.matcher(originalSql);
-
-            if (matcher.find()) {
-                String tableName = matcher.group(1);
-                tables.add(tableName);
-
-                String fieldsStr = matcher.group(2);
-                if (fieldsStr != null) {
-                    String[] fieldArray = fieldsStr.split(",");
-                    for (String field : fieldArray) {
-                        if (field != null) {
-                            fields.add(field.trim());
-                        }
-                    }
-                }
-
-                String valuesStr = matcher.group(3);
-                if (valuesStr != null) {
-                    // 处理值，保留引号
-                    List<String> parsedValues = parseValues(valuesStr);
-                    values.addAll(parsedValues);
-                }
-            } else {
-                // 如果正则匹配失败，保留原始SQL
-                System.err.println("Unable to parse INSERT statement: " + originalSql);
-                // 添加一个空表名，避免后续空指针
-                tables.add("unknown_table");
-            }
-        }
-
-        // 新增方法：解析VALUES部分，正确处理引号内的逗号
-        private List<String> parseValues(String valuesStr) {
-            List<String> result = new ArrayList<>();
-            StringBuilder currentValue = new StringBuilder();
-            boolean inQuotes = false;
-            char quoteChar = '\0';
-
-            for (int i = 0; i < valuesStr.length(); i++) {
-                char c = valuesStr.charAt(i);
-
-                if (!inQuotes && (c == '\'' || c == '"')) {
-                    inQuotes = true;
-                    quoteChar = c;
-                    currentValue.append(c);
-                } else if (inQuotes && c == quoteChar && (i + 1 >= valuesStr.length() || valuesStr.charAt(i + 1) != quoteChar)) {
-                    inQuotes = false;
-                    quoteChar = '\0';
-                    currentValue.append(c);
-                } else if (!inQuotes && c == ',') {
-                    result.add(currentValue.toString().trim());
-                    currentValue = new StringBuilder();
-                } else {
-                    currentValue.append(c);
+            int close = parseList(sql, SqlScanner.skipSpaces(sql, tableEnd), end, fields);
+            pos = SqlScanner.matchKeyword(sql, SqlScanner.skipSpaces(sql, close + 1), "VALUES");
+            if (pos == -1) {
+                throw new SqlParseException("Expected VALUES at position " + (close + 1), close + 1);
+            }
+            // 多行值之间用逗号分隔，最后一行之后的内容保留
+            while (true) {
+                List<String> values = new ArrayList<>();
+                close = parseList(sql, SqlScanner.skipSpaces(sql, pos), end, values);
+                rows.add(values);
+                pos = SqlScanner.skipSpaces(sql, close + 1);
+                if (pos >= end || sql.charAt(pos) != ',') {
+                    break;
                 }
+                pos++;
             }
+            tail = extractSubqueries(new SqlSpan(sql, Math.min(pos, end), end).trim());
+        }
 
-            // 添加最后一个值
-            if (currentValue.length() > 0) {
-                result.add(currentValue.toString().trim());
+        // 解析pos处括号中的列表，按顶层逗号拆分，引号、注释和函数参数中的逗号不拆，返回右括号位置
+        private int parseList(String sql, int pos, int end, List<String> items) {
+            if (pos >= end || sql.charAt(pos) != '(') {
+                throw new SqlParseException("Expected ( at position " + pos, pos);
             }
-
-            return result;
+            int close = SqlScanner.matchParen(sql, pos);
+            for (SqlSpan item : SqlScanner.splitTopLevel(sql, ',', pos + 1, close)) {
+                items.add(withLineBreak(item.toString(), item));
+            }
+            return close;
         }
 
         @Override
-        public String toSql() {
+        protected void writeTo(Appendable sql) throws IOException {
             if (tables.isEmpty() || fields.isEmpty()) {
-                return originalSql; // 返回原始SQL
+                originalSql.appendTo(sql); // 返回原始SQL
+                return;
             }
 
-            StringBuilder sql = new StringBuilder("INSERT INTO ");
+            sql.append("INSERT INTO ");
             sql.append(tables.get(0));
             sql.append(" (");
-            sql.append(String.join(", ", fields));
-            sql.append(") VALUES (");
-            sql.append(String.join(", ", values));
-            sql.append(")");
-
-            return sql.toString();
+            writeList(sql, fields);
+            sql.append(") VALUES ");
+            for (int i = 0; i < rows.size(); i++) {
+                sql.append(i > 0 ? ", (" : "(");
+                writeList(sql, rows.get(i));
+                sql.append(")");
+            }
+            if (!tail.isEmpty()) {
+                sql.append(" ");
+                writeRestored(sql, tail);
+            }
         }
 
-        // 重写字段转换方法，确保values列表保持同步
         @Override
-        public void convertFieldsToCamelCase() {
-            // 保存原始values，因为父类方法可能会影响它们
-            List<String> originalValues = new ArrayList<>(values);
-
-            fields = fields.stream()
-                    .map(SqlFactory::underscoreToCamelCase)
-                    .collect(Collectors.toList());
-
-            // 恢复values列表，因为它们是值而不是字段名，不应该被转换
-            values = originalValues;
+        protected void rewriteClauses(UnaryOperator<String> rewriter) {
+            tail = rewriter.apply(tail);
         }
 
+        // 转换字段列表和值之后的部分，值列表是值而不是字段名，不转换
         @Override
-        public void convertFieldsToUnderscore() {
-            // 保存原始values，因为父类方法可能会影响它们
-            List<String> originalValues = new ArrayList<>(values);
-
-            fields = fields.stream()
-                    .map(SqlFactory::camelCaseToUnderscore)
-                    .collect(Collectors.toList());
-
-            // 恢复values列表，因为它们是值而不是字段名，不应该被转换
-            values = originalValues;
+        protected void convertColumnNames(Function<String, String> converter, Map<String, String> renames) {
+            fields.replaceAll(converter::apply);
+            tail = ColumnNameConverter.convert(tail, converter, definedAliases, renames);
         }
     }
 
     // UPDATE语句实现
     class UpdateStatement extends SqlStatement {
-        private Map<String, String> setValues = new LinkedHashMap<>();
-        private String whereClause = "";
+        // 在父类构造函数中解析赋值，不能有初始值
+        private Map<String, String> setValues;
+        private String whereClause;
 
-        public UpdateStatement(String sql) {
+        public UpdateStatement(SqlSpan sql) {
             super(sql);
-            // 由于Java内部类字段初始化顺序问题，需要在构造函数中重新解析
-            reparseUpdateData();
-        }
-
-        private void reparseUpdateData() {
-            // 确保字段被初始化
             if (setValues == null) {
                 setValues = new LinkedHashMap<>();
-            } else {
-                setValues.clear();
             }
-
-            // 清空fields列表，避免重复添加
-            fields.clear();
-
-            // 重新解析UPDATE语句
-            Pattern updatePattern = Pattern.compile(
-                    "UPDATE\\s+([\\w\\.]+)\\s+SET\\s+(.+?)(?:\\s+WHERE\\s+(.+))?$",
-                    Pattern.CASE_INSENSITIVE | Pattern.DOTALL
-            );
-
-            Matcher matcher = updatePattern.matcher(originalSql);
-            if (matcher.find()) {
-                String setClause = matcher.group(2);
-                if (setClause != null) {
-                    parseSetClause(setClause);
-                }
-
-                String whereGroup = matcher.group(3);
-                whereClause = whereGroup != null ? whereGroup.trim() : "";
-                System.err.println("DEBUG: Reparsed UPDATE - setValues: " + setValues + ", whereClause: '" + whereClause + "'");
+            if (whereClause == null) {
+                whereClause = "";
             }
         }
 
+        // 按位置扫描：UPDATE 表名 SET 赋值列表 [WHERE 条件]，每个字符只看常数次，不使用正则
         @Override
         protected void parse() {
-            // 初始化，避免空指针
             setValues = new LinkedHashMap<>();
+            String sql = originalSql.getSource();
+            int end = originalSql.getEnd();
 
-            Pattern updatePattern = Pattern.compile(
-                    "UPDATE\\s+([\\w\\.]+)\\s+SET\\s+(.+?)(?:\\s+WHERE\\s+(.+))?$",
-                    Pattern.CASE_INSENSITIVE | Pattern.DOTALL
-            );
-
-            Matcher matcher = updatePattern.matcher(originalSql);
-
-            if (matcher.find()) {
-                String tableName = matcher.group(1);
-                if (tableName != null) {
-                    tables.add(tableName);
-                }
-
-                String setClause = matcher.group(2);
-                System.err.println("DEBUG: UPDATE setClause: '" + setClause + "'");
-                if (setClause != null) {
-                    // 解析SET子句 - 改进解析逻辑以处理带引号的值
-                    parseSetClause(setClause);
-                }
-
-                // WHERE子句是第3组
-                String whereGroup = matcher.group(3);
-                whereClause = whereGroup != null ? whereGroup.trim() : "";
-                System.err.println("DEBUG: UPDATE whereClause: '" + whereClause + "'");
-            } else {
-                // 解析失败时保留原始SQL
-                System.err.println("Unable to parse UPDATE statement: " + originalSql);
-                tables.add("unknown_table");
-            }
-        }
-
-        private void parseSetClause(String setClause) {
-            System.err.println("DEBUG: parseSetClause called with: '" + setClause + "'");
-
-            // 改进的SET子句解析，处理带引号的值
-            List<String> setPairs = new ArrayList<>();
-            StringBuilder currentPair = new StringBuilder();
-            boolean inQuotes = false;
-            char quoteChar = '\0';
-
-            for (int i = 0; i < setClause.length(); i++) {
-                char c = setClause.charAt(i);
-
-                if (!inQuotes && (c == '\'' || c == '"')) {
-                    inQuotes = true;
-                    quoteChar = c;
-                    currentPair.append(c);
-                } else if (inQuotes && c == quoteChar) {
-                    inQuotes = false;
-                    quoteChar = '\0';
-                    currentPair.append(c);
-                } else if (!inQuotes && c == ',') {
-                    setPairs.add(currentPair.toString().trim());
-                    currentPair = new StringBuilder();
-                } else {
-                    currentPair.append(c);
-                }
+            int pos = SqlScanner.matchKeyword(sql, SqlScanner.skipSpaces(sql, originalSql.getStart()), "UPDATE");
+            if (pos == -1) {
+                throw new SqlParseException("Unable to parse UPDATE statement: " + originalSql, originalSql.getStart());
+            }
+            pos = SqlScanner.skipSpaces(sql, pos);
+            int tableEnd = Math.min(SqlScanner.scanName(sql, pos), end);
+            if (tableEnd == pos) {
+                throw new SqlParseException("Expected table name at position " + pos, pos);
             }
+            tables.add(sql.substring(pos, tableEnd));
 
-            // 添加最后一个pair
-            if (currentPair.length() > 0) {
-                setPairs.add(currentPair.toString().trim());
+            pos = SqlScanner.skipSpaces(sql, tableEnd);
+            int setEnd = SqlScanner.matchKeyword(sql, pos, "SET");
+            if (setEnd == -1) {
+                throw new SqlParseException("Expected SET at position " + pos, pos);
             }
 
-            System.err.println("DEBUG: setPairs: " + setPairs);
+            // 只识别顶层的WHERE，赋值中的子查询不影响
+            int whereIndex = SqlScanner.indexOfKeyword(sql, "WHERE", setEnd, end);
+            parseSetClause(sql, setEnd, whereIndex == -1 ? end : whereIndex);
+            whereClause = whereIndex == -1 ? ""
+                    : extractSubqueries(new SqlSpan(sql, whereIndex + "WHERE".length(), end).trim());
+        }
 
-            // 解析每个键值对
-            for (String pair : setPairs) {
-                String[] parts = pair.split("\\s*=\\s*", 2);
-                System.err.println("DEBUG: Processing pair: '" + pair + "' -> " + Arrays.toString(parts));
-                if (parts.length == 2) {
-                    String field = parts[0].trim();
-                    String value = parts[1].trim();
-                    fields.add(field);
-                    setValues.put(field, value);
-                    System.err.println("DEBUG: Added field: '" + field + "' = '" + value + "'");
+        // 按顶层逗号拆分赋值，引号和括号中的逗号不拆
+        private void parseSetClause(String sql, int from, int to) {
+            for (SqlSpan pair : SqlScanner.splitTopLevel(sql, ',', from, to)) {
+                int eq = -1;
+                for (int i = pair.getStart(); i < pair.getEnd(); i++) {
+                    if (sql.charAt(i) == '=') {
+                        eq = i;
+                        break;
+                    }
                 }
+                if (eq == -1) {
+                    throw new SqlParseException("Expected = at position " + pair.getStart(), pair.getStart());
+                }
+                String field = new SqlSpan(sql, pair.getStart(), eq).trim().toString();
+                SqlSpan valueSpan = new SqlSpan(sql, eq + 1, pair.getEnd()).trim();
+                String value = withLineBreak(extractSubqueries(valueSpan), valueSpan);
+                fields.add(field);
+                setValues.put(field, value);
             }
-
-            System.err.println("DEBUG: Final setValues: " + setValues);
         }
 
         @Override
-        public String toSql() {
+        protected void writeTo(Appendable sql) throws IOException {
             if (tables.isEmpty() || fields.isEmpty()) {
-                return originalSql; // 返回原始SQL
+                originalSql.appendTo(sql); // 返回原始SQL
+                return;
             }
 
-            StringBuilder sql = new StringBuilder("UPDATE ");
+            sql.append("UPDATE ");
             sql.append(tables.get(0));
             sql.append(" SET ");
 
-            List<String> setPairs = new ArrayList<>();
+            boolean first = true;
             for (String field : fields) {
                 String value = setValues.get(field);
                 if (value != null) {
-                    setPairs.add(field + " = " + value);
-                } else {
-                    System.err.println("DEBUG: No value found for field: " + field);
-                    System.err.println("DEBUG: Available setValues: " + setValues);
+                    if (!first) {
+                        sql.append(", ");
+                    }
+                    sql.append(field).append(" = ");
+                    writeRestored(sql, value);
+                    first = false;
                 }
             }
-            sql.append(String.join(", ", setPairs));
 
             if (!whereClause.isEmpty()) {
-                sql.append(" WHERE ").append(whereClause);
+                sql.append(" WHERE ");
+                writeRestored(sql, whereClause);
             }
-
-            return sql.toString();
         }
 
         @Override
-        public void convertFieldsToCamelCase() {
-            System.err.println("DEBUG: UpdateStatement.convertFieldsToCamelCase() called");
-            System.err.println("DEBUG: Original fields: " + fields);
-            System.err.println("DEBUG: Original setValues: " + setValues);
-            System.err.println("DEBUG: Original whereClause: " + whereClause);
-
-            // 转换SET子句中的字段名
-            Map<String, String> newSetValues = new LinkedHashMap<>();
-            List<String> newFields = new ArrayList<>();
-
-            for (String field : fields) {
-                String newField = underscoreToCamelCase(field);
-                newFields.add(newField);
-                newSetValues.put(newField, setValues.get(field));
-            }
-
-            fields = newFields;
-            setValues = newSetValues;
-
-            // 转换WHERE子句中的字段名
-            whereClause = convertFieldNamesInWhereClause(whereClause, true);
-
-            System.err.println("DEBUG: New fields: " + fields);
-            System.err.println("DEBUG: New setValues: " + setValues);
-            System.err.println("DEBUG: Final whereClause: " + whereClause);
+        protected void rewriteClauses(UnaryOperator<String> rewriter) {
+            setValues.replaceAll((field, value) -> rewriter.apply(value));
+            whereClause = rewriter.apply(whereClause);
         }
 
         @Override
-        public void convertFieldsToUnderscore() {
-            // 转换SET子句中的字段名
+        protected void convertColumnNames(Function<String, String> converter, Map<String, String> renames) {
+            // 转换SET子句中的字段名，赋值右侧的表达式与WHERE一样转换其中的列名
             Map<String, String> newSetValues = new LinkedHashMap<>();
             List<String> newFields = new ArrayList<>();
 
             for (String field : fields) {
-                String newField = camelCaseToUnderscore(field);
+                String newField = converter.apply(field);
                 newFields.add(newField);
-                newSetValues.put(newField, setValues.get(field));
+                String value = ColumnNameConverter.convert(setValues.get(field), converter, definedAliases, renames);
+                newSetValues.put(newField, value);
             }
 
             fields = newFields;
             setValues = newSetValues;
 
             // 转换WHERE子句中的字段名
-            whereClause = convertFieldNamesInWhereClause(whereClause, false);
-        }
-
-        // 转换WHERE子句中的字段名
-        private String convertFieldNamesInWhereClause(String clause, boolean toCamelCase) {
-            if (clause == null || clause.isEmpty()) {
-                return clause;
-            }
-
-            // 简单的字段名转换，匹配标识符模式
-            // 这个正则表达式匹配字段名（包括带表别名的字段）
-            Pattern fieldPattern = Pattern.compile("\\b([a-zA-Z_][a-zA-Z0-9_]*(?:\\.[a-zA-Z_][a-zA-Z0-9_]*)?)\\b");
-            Matcher matcher = fieldPattern.matcher(clause);
-
-            StringBuffer result = new StringBuffer();
-            while (matcher.find()) {
-                String fieldName = matcher.group(1);
-                String convertedField;
-
-                if (fieldName.contains(".")) {
-                    // 处理带表别名的字段，如 t.field_name
-                    String[] parts = fieldName.split("\\.", 2);
-                    String tablePart = parts[0];
-                    String fieldPart = parts[1];
-
-                    // 只转换字段部分，不转换表别名
-                    String convertedFieldPart = toCamelCase ?
-                        underscoreToCamelCase(fieldPart) :
-                        camelCaseToUnderscore(fieldPart);
-                    convertedField = tablePart + "." + convertedFieldPart;
-                } else {
-                    // 普通字段名
-                    convertedField = toCamelCase ?
-                        underscoreToCamelCase(fieldName) :
-                        camelCaseToUnderscore(fieldName);
-                }
-
-                matcher.appendReplacement(result, convertedField);
-            }
-            matcher.appendTail(result);
-
-            return result.toString();
+            whereClause = ColumnNameConverter.convert(whereClause, converter, definedAliases, renames);
         }
     }
 
     // DELETE语句实现
     class DeleteStatement extends SqlStatement {
-        private String whereClause = "";
+        // 在父类构造函数中解析赋值，不能有初始值
+        private String whereClause;
 
-        public DeleteStatement(String sql) {
+        public DeleteStatement(SqlSpan sql) {
             super(sql);
+            if (whereClause == null) {
+                whereClause = "";
+            }
         }
 
+        // 按位置扫描：DELETE FROM 表名 [WHERE 条件]，不使用正则
         @Override
         protected void parse() {
-            Pattern deletePattern = Pattern.compile(
-                    "DELETE\\s+FROM\\s+([\\w\\.]+)(?:\\s+WHERE\\s+(.+))?$",
-                    Pattern.CASE_INSENSITIVE
-            );
+            String sql = originalSql.getSource();
+            int end = originalSql.getEnd();
 
-            Matcher matcher = deletePattern.matcher(originalSql);
+            int pos = SqlScanner.matchKeyword(sql, SqlScanner.skipSpaces(sql, originalSql.getStart()), "DELETE");
+            pos = pos == -1 ? -1 : SqlScanner.matchKeyword(sql, SqlScanner.skipSpaces(sql, pos), "FROM");
+            if (pos == -1) {
+                throw new SqlParseException("Unable to parse DELETE statement: " + originalSql, originalSql.getStart());
+            }
+            pos = SqlScanner.skipSpaces(sql, pos);
+            int tableEnd = Math.min(SqlScanner.scanName(sql, pos), end);
+            if (tableEnd == pos) {
+                throw new SqlParseException("Expected table name at position " + pos, pos);
+            }
+            tables.add(sql.substring(pos, tableEnd));
 
-            if (matcher.find()) {
-                String tableName = matcher.group(1);
-                tables.add(tableName);
-                String whereGroup = matcher.group(2);
-                whereClause = whereGroup != null ? whereGroup.trim() : "";
+            pos = SqlScanner.skipSpaces(sql, tableEnd);
+            if (pos >= end) {
+                whereClause = "";
+                return;
+            }
+            int whereEnd = SqlScanner.matchKeyword(sql, pos, "WHERE");
+            if (whereEnd == -1) {
+                throw new SqlParseException("Unexpected token at position " + pos, pos);
             }
+            whereClause = extractSubqueries(new SqlSpan(sql, whereEnd, end).trim());
         }
 
         @Override
-        public String toSql() {
-            StringBuilder sql = new StringBuilder("DELETE FROM ");
+        protected void rewriteClauses(UnaryOperator<String> rewriter) {
+            whereClause = rewriter.apply(whereClause);
+        }
+
+        @Override
+        protected void writeTo(Appendable sql) throws IOException {
+            sql.append("DELETE FROM ");
             sql.append(tables.get(0));
 
             if (!whereClause.isEmpty()) {
-                sql.append(" WHERE ").append(whereClause);
+                sql.append(" WHERE ");
+                writeRestored(sql, whereClause);
             }
+        }
+    }
 
-            return sql.toString();
+    // 不支持或解析失败的语句：不建模，原样输出，表名映射和字段转换都不作用于它
+    class PassThroughStatement extends SqlStatement {
+
+        public PassThroughStatement(SqlSpan sql) {
+            super(sql);
+        }
+
+        @Override
+        protected void parse() {
+        }
+
+        @Override
+        protected void writeTo(Appendable sql) throws IOException {
+            originalSql.appendTo(sql);
         }
     }
 
@@ -1035,6 +2179,14 @@ public class SqlFactory implements SelectAsName, SqlParser, FieldEditor, TableNa
         factory.所有字段下划线转驼峰();
         System.out.println("转驼峰: " + factory.toSqlStr());
 
+        // 赋值右侧引用的列同样转换
+        String updateExprSql = "UPDATE user_info SET login_count = login_count + 1, nick_name = upper(user_name) WHERE user_id = 1";
+        factory.fromSql(updateExprSql);
+        System.out.println("原SQL: " + updateExprSql);
+
+        factory.所有字段下划线转驼峰();
+        System.out.println("转驼峰: " + factory.toSqlStr());
+
         // 测试6: 添加驼峰别名
         System.out.println("\n=== 测试6: 添加驼峰别名 ===");
         String aliasSql = "SELECT user_id, user_name, create_time FROM user_info WHERE user_id = 1";
@@ -1060,12 +2212,316 @@ public class SqlFactory implements SelectAsName, SqlParser, FieldEditor, TableNa
         factory.所有查询字段软添加驼峰别名();
         System.out.println("添加驼峰别名(已有别名): " + factory.toSqlStr());
 
+        // 测试7: JOIN语句
+        System.out.println("\n=== 测试7: JOIN语句 ===");
+        String joinSql = "SELECT a.agency_id, b.bgt_amount FROM t_agency a LEFT JOIN t_budget AS b ON a.agency_id = b.agency_id AND b.is_deleted = 2 "
+                + "INNER JOIN (SELECT agency_id, MAX(ver) ver FROM t_version GROUP BY agency_id) v ON v.agency_id = a.agency_id, t_dict d WHERE a.is_enabled = 1";
+        factory.fromSql(joinSql);
+        System.out.println("原SQL: " + joinSql);
+        System.out.println("往返: " + factory.toSqlStr());
+        factory.addTableNameMap("t_budget", "bgt.t_budget_2025");
+        System.out.println("表名映射后: " + factory.toSqlStr());
+
+        // 测试8: 子查询、CTE和UNION
+        System.out.println("\n=== 测试8: 子查询、CTE和UNION ===");
+        String cteSql = "WITH bgt AS (SELECT agency_id, SUM(bgt_amount) total_amount FROM t_budget GROUP BY agency_id) "
+                + "SELECT a.agency_id, b.total_amount FROM t_agency a JOIN bgt b ON b.agency_id = a.agency_id "
+                + "WHERE a.agency_id IN (SELECT agency_id FROM t_budget_adjust WHERE adjust_type = '1') "
+                + "UNION ALL SELECT agency_id, 0 FROM t_agency_new";
+        factory.fromSql(cteSql);
+        System.out.println("原SQL: " + cteSql);
+        System.out.println("往返: " + factory.toSqlStr());
+        factory.addTableNameMap("t_budget_adjust", "bgt.t_budget_adjust");
+        factory.所有字段下划线转驼峰();
+        System.out.println("表名映射+转驼峰: " + factory.toSqlStr());
+
+        // 测试9: 限定列名随表名映射改写
+        System.out.println("\n=== 测试9: 限定列名随表名映射改写 ===");
+        String qualifiedSql = "WITH t_dict AS (SELECT code, name FROM t_dict_raw) "
+                + "SELECT t_agency.agency_id, d.name FROM t_agency JOIN t_dict d ON d.code = t_agency.agency_type "
+                + "WHERE EXISTS (SELECT 1 FROM t_budget WHERE t_budget.agency_id = t_agency.agency_id)";
+        SqlFactory mappingFactory = new SqlFactory();
+        mappingFactory.fromSql(qualifiedSql);
+        System.out.println("原SQL: " + qualifiedSql);
+        mappingFactory.addTableNameMap("t_agency", "bas.t_agency");
+        mappingFactory.addTableNameMap("t_budget", "bgt.t_budget");
+        mappingFactory.addTableNameMap("t_dict", "bas.t_dict");
+        System.out.println("表名映射后: " + mappingFactory.toSqlStr());
+        // 带引号的表名去掉引号后匹配，映射结果保留原来的引号
+        String[] quotedSqls = {
+                "INSERT INTO `t_user` (user_id, user_name) VALUES (1, 'a')",
+                "SELECT \"t_user\".user_id FROM \"t_user\" WHERE t_user.user_name = 'a'"
+        };
+        for (String sql : quotedSqls) {
+            mappingFactory.fromSql(sql);
+            System.out.println("原SQL: " + sql);
+            mappingFactory.addTableNameMap("t_user", "sys_user");
+            System.out.println("表名映射后: " + mappingFactory.toSqlStr());
+        }
+
+        // 测试10: 批量表名映射字典
+        System.out.println("\n=== 测试10: 批量表名映射字典 ===");
+        TableNameDictionary dictionary = TableNameDictionary.builder()
+                .put("T_AGENCY", "bas.t_agency")
+                .put("t_bgt_*", "bgt.t_*")
+                .put("legacy.*", "hist.*")
+                .build();
+        SqlFactory dictionaryFactory = new SqlFactory();
+        dictionaryFactory.setTableNameDictionary(dictionary);
+        String dictionarySql = "SELECT a.agency_id, t_bgt_detail.amount FROM t_agency a JOIN t_bgt_detail ON t_bgt_detail.agency_id = a.agency_id "
+                + "JOIN legacy.t_log l ON l.agency_id = a.agency_id";
+        dictionaryFactory.fromSql(dictionarySql);
+        System.out.println("原SQL: " + dictionarySql);
+        System.out.println("字典映射后: " + dictionaryFactory.toSqlStr());
+
+        // 测试11: 通配表名映射规则
+        System.out.println("\n=== 测试11: 通配表名映射规则 ===");
+        SqlFactory ruleFactory = new SqlFactory();
+        Map<String, String> rules = new LinkedHashMap<>();
+        rules.put("*_2024", "*_hist");
+        rules.put("t_bgt_*", "bgt.t_*");
+        rules.put("t_bgt_*_2024", "hist.bgt_*");
+        rules.put("*.t_*_log", "audit.*_*");
+        ruleFactory.addTableNameRules(rules);
+        String ruleSql = "SELECT * FROM t_bgt_plan p JOIN t_pay_2024 y ON y.plan_id = p.plan_id "
+                + "JOIN t_bgt_plan_2024 h ON h.plan_id = p.plan_id JOIN ods.t_pay_log l ON l.plan_id = p.plan_id";
+        ruleFactory.fromSql(ruleSql);
+        System.out.println("原SQL: " + ruleSql);
+        System.out.println("规则映射后: " + ruleFactory.toSqlStr());
+
+        // 测试12: 字段转换跳过关键字、函数、常量和别名
+        System.out.println("\n=== 测试12: 字段转换跳过关键字、函数、常量和别名 ===");
+        String convertSql = "SELECT t.agency_id, SUM(t.pay_amount) total_amount, to_char(t.pay_date, 'yyyy_mm') AS pay_month, "
+                + "CASE WHEN t.is_deleted IS NULL THEN 'not_deleted' ELSE 'is_deleted' END del_flag FROM t_pay t "
+                + "WHERE t.pay_status IN ('A_01', 'B_02') AND t.remark LIKE '%fund_code%' AND t.fiscal_year = #{fiscal_year} "
+                + "GROUP BY t.agency_id, to_char(t.pay_date, 'yyyy_mm') HAVING SUM(t.pay_amount) > 0 ORDER BY total_amount DESC NULLS LAST";
+        SqlFactory convertFactory = new SqlFactory();
+        convertFactory.fromSql(convertSql);
+        System.out.println("原SQL: " + convertSql);
+        convertFactory.所有字段下划线转驼峰();
+        System.out.println("转驼峰: " + convertFactory.toSqlStr());
+        convertFactory.所有字段驼峰转下划线();
+        System.out.println("转下划线: " + convertFactory.toSqlStr());
+        // 列别名只保护不带前缀的引用，u.user_name 与别名同名也照常转换
+        String shadowSql = "SELECT d.dept_name user_name, u.user_name FROM t_user u JOIN t_dept d ON d.dept_id = u.dept_id "
+                + "WHERE u.user_name = 'x' ORDER BY user_name";
+        convertFactory.fromSql(shadowSql);
+        System.out.println("原SQL: " + shadowSql);
+        convertFactory.所有字段下划线转驼峰();
+        System.out.println("转驼峰: " + convertFactory.toSqlStr());
+
+        // 测试13: 改写计划，多个操作一次遍历完成
+        System.out.println("\n=== 测试13: 改写计划 ===");
+        String planSql = "SELECT t_agency.agency_id, b.bgt_amount FROM t_agency JOIN t_budget b ON b.agency_id = t_agency.agency_id "
+                + "WHERE t_agency.is_enabled = 1 AND EXISTS (SELECT 1 FROM t_budget_adjust WHERE t_budget_adjust.agency_id = t_agency.agency_id)";
+        SqlFactory chainFactory = new SqlFactory();
+        chainFactory.fromSql(planSql);
+        chainFactory.所有字段下划线转驼峰();
+        chainFactory.addTableNameMap("t_agency", "bas.t_agency");
+        chainFactory.addTableNameMap("t_budget_adjust", "bgt.t_budget_adjust");
+        chainFactory.所有查询字段软添加驼峰别名();
+        SqlRewritePlan plan = SqlRewritePlan.builder()
+                .underscoreToCamelCase()
+                .mapTable("t_agency", "bas.t_agency")
+                .mapTable("t_budget_adjust", "bgt.t_budget_adjust")
+                .addCamelCaseAliases()
+                .build();
+        SqlFactory planFactory = new SqlFactory();
+        planFactory.fromSql(planSql);
+        planFactory.rewrite(plan);
+        System.out.println("原SQL: " + planSql);
+        System.out.println("逐个调用: " + chainFactory.toSqlStr());
+        System.out.println("改写计划: " + planFactory.toSqlStr());
+        System.out.println("结果一致: " + chainFactory.toSqlStr().equals(planFactory.toSqlStr()));
+
+        // 测试14: 只映射表名时，未改写的子句原样输出
+        System.out.println("\n=== 测试14: 子句按需解析 ===");
+        String lazySql = "SELECT p.pay_id FROM t_pay p WHERE p.fiscal_year = 2025  AND p.pay_status IN ('1','2') /* 已支付 */ "
+                + "AND p.agency_id IN (SELECT agency_id FROM t_agency WHERE is_enabled = 1) ORDER BY p.pay_id";
+        SqlFactory lazyFactory = new SqlFactory();
+        lazyFactory.fromSql(lazySql);
+        lazyFactory.addTableNameMap("t_pay", "pay.t_pay_2025");
+        lazyFactory.addTableNameMap("t_agency", "bas.t_agency");
+        System.out.println("原SQL: " + lazySql);
+        System.out.println("表名映射后: " + lazyFactory.toSqlStr());
+
+        // 测试15: CTE、派生表和集合运算分支都在原始SQL的片段上解析
+        System.out.println("\n=== 测试15: 原始SQL片段解析 ===");
+        String spanSql = "  WITH a AS (SELECT agency_id FROM t_agency)  SELECT x.agency_id FROM (SELECT agency_id FROM a) x "
+                + "LEFT JOIN t_pay p ON p.agency_id = x.agency_id UNION ALL (SELECT agency_id FROM t_agency)  ";
+        SqlFactory spanFactory = new SqlFactory();
+        spanFactory.fromSql(spanSql);
+        spanFactory.addTableNameMap("t_agency", "bas.t_agency");
+        spanFactory.addTableNameMap("t_pay", "pay.t_pay");
+        System.out.println("原SQL: " + spanSql.trim());
+        System.out.println("表名映射后: " + spanFactory.toSqlStr());
+
+        // 测试16: 无法解析的语句原样输出，部分失败时其余部分照常转换
+        System.out.println("\n=== 测试16: 解析失败透传 ===");
+        String[] passThroughTests = {
+                "SELECT 1",
+                "MERGE INTO t_agency a USING t_pay p ON (a.agency_id = p.agency_id) WHEN MATCHED THEN UPDATE SET a.amt = p.amt",
+                "SELECT agency_id FROM t_agency WHERE EXISTS (SELECT 1) AND agency_id IN (SELECT agency_id FROM t_pay)",
+                // 子句中括号不匹配，改写时才发现，该子句原样输出
+                "SELECT agency_id FROM t_agency WHERE agency_id = (SELECT 1 FROM t_pay"
+        };
+        for (String sql : passThroughTests) {
+            SqlFactory passThroughFactory = new SqlFactory();
+            passThroughFactory.fromSql(sql);
+            passThroughFactory.addTableNameMap("t_agency", "bas.t_agency");
+            passThroughFactory.addTableNameMap("t_pay", "pay.t_pay");
+            System.out.println("原SQL: " + sql);
+            System.out.println("表名映射后: " + passThroughFactory.toSqlStr());
+            // 子句按需解析，输出后解析结果才包含子句中子查询的错误
+            System.out.println("解析结果: " + passThroughFactory.getParseResult());
+        }
+
+        // 测试17: 阈值为0时每次转换都记录样本
+        System.out.println("\n=== 测试17: 慢转换采样 ===");
+        SlowTransformRecorder.configure(0, 4);
+        SqlFactory sampledFactory = new SqlFactory();
+        sampledFactory.fromSql("SELECT user_name FROM t_user WHERE user_id = 1");
+        sampledFactory.addTableNameMap("t_user", "sys.t_user");
+        sampledFactory.所有字段下划线转驼峰();
+        sampledFactory.toSqlStr();
+        for (SlowTransformRecorder.Sample sample : SlowTransformRecorder.top(1)) {
+            System.out.println("样本: " + sample.getStatementType() + " " + sample.getPipeline() + " " + sample.getSql());
+        }
+        SlowTransformRecorder.configure(50, 128);
+
+        // 测试18: 超长SET子句和多行WHERE按位置扫描，耗时与长度成正比
+        System.out.println("\n=== 测试18: UPDATE/DELETE线性扫描 ===");
+        StringBuilder longUpdate = new StringBuilder("UPDATE t_user SET ");
+        for (int i = 0; i < 20000; i++) {
+            longUpdate.append(i > 0 ? ", " : "").append("col_").append(i).append(" = 'it''s, ").append(i).append("'");
+        }
+        longUpdate.append(" WHERE user_id IN (SELECT user_id FROM t_dept_user WHERE dept_id = 1)");
+        SqlFactory scanFactory = new SqlFactory();
+        long scanStart = System.nanoTime();
+        scanFactory.fromSql(longUpdate.toString());
+        scanFactory.所有字段下划线转驼峰();
+        String scanned = scanFactory.toSqlStr();
+        System.out.println("赋值数: " + (scanned.split("'it''s, ").length - 1) + " 解析结果: " + scanFactory.getParseResult()
+                + " 一秒内完成: " + (System.nanoTime() - scanStart < 1_000_000_000L));
+        System.out.println("WHERE: " + scanned.substring(scanned.indexOf(" WHERE ")));
+        String multiLineDelete = "DELETE FROM t_user\nWHERE user_id = 1\n  AND dept_id IN (SELECT dept_id FROM t_dept)";
+        scanFactory.fromSql(multiLineDelete);
+        scanFactory.addTableNameMap("t_dept", "sys.t_dept");
+        System.out.println("多行DELETE: " + scanFactory.toSqlStr());
+
+        // 测试19: 函数参数、字符串常量、两个连续引号和注释中的逗号都不拆分，默认ANSI方言下反斜杠是普通字符
+        System.out.println("\n=== 测试19: 赋值和值列表拆分 ===");
+        String[] splitTests = {
+                "UPDATE t_user SET user_name = concat(first_name, ' ', last_name), memo = 'C:\\', path = 'a, b' WHERE user_id = 1",
+                "UPDATE t_user SET memo = 'it''s, ok' /* 备注, 可空 */, update_time = now() -- 修改, 时间\nWHERE user_id = 2",
+                "INSERT INTO t_user (user_id, user_name, create_time) VALUES (3, concat('a', 'b'), to_date('2024-01-01', 'yyyy-mm-dd'))"
+        };
+        for (String sql : splitTests) {
+            SqlFactory splitFactory = new SqlFactory();
+            splitFactory.fromSql(sql);
+            splitFactory.所有字段下划线转驼峰();
+            System.out.println("原始: " + sql);
+            System.out.println("转换: " + splitFactory.toSqlStr());
+        }
+
+        // 测试20: 大语句直接编码写入通道，结果与toSqlStr一致
+        System.out.println("\n=== 测试20: 流式写入通道 ===");
+        StringBuilder bigSql = new StringBuilder("SELECT user_id, user_name FROM t_user WHERE dept_id IN (SELECT dept_id FROM t_dept WHERE dept_name = '研发😀') AND user_id IN (");
+        for (int i = 0; i < 50000; i++) {
+            bigSql.append(i > 0 ? ", " : "").append(i);
+        }
+        bigSql.append(")");
+        SqlFactory streamFactory = new SqlFactory();
+        streamFactory.fromSql(bigSql.toString());
+        streamFactory.所有字段下划线转驼峰();
+        byte[] expected = streamFactory.toSqlStr().getBytes(java.nio.charset.StandardCharsets.UTF_8);
+        java.io.ByteArrayOutputStream bytes = new java.io.ByteArrayOutputStream();
+        try (SqlChannelWriter writer = new SqlChannelWriter(java.nio.channels.Channels.newChannel(bytes))) {
+            streamFactory.writeSql(writer);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        System.out.println("字节数: " + bytes.size() + "，与toSqlStr一致: " + Arrays.equals(expected, bytes.toByteArray()));
+        // 代理对拆在两次append之间
+        bytes.reset();
+        try (SqlChannelWriter writer = new SqlChannelWriter(java.nio.channels.Channels.newChannel(bytes))) {
+            for (char c : "'研发😀'".toCharArray()) {
+                writer.append(c);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        System.out.println("逐字符写入: " + new String(bytes.toByteArray(), java.nio.charset.StandardCharsets.UTF_8));
+
+        // 测试21: 内存映射转换整个文件，窗口很小时语句跨窗口、长语句超过窗口
+        System.out.println("\n=== 测试21: 文件转换 ===");
+        String script = "-- 导出脚本\nSET NAMES utf8mb4;\n"
+                + "/* 用户; 表 */\nINSERT INTO t_user (user_id, user_name) VALUES (1, '张三;李四'), (2, '王五');\n"
+                + "UPDATE t_user SET user_name = 'it''s; ok' WHERE user_id = 1;\n"
+                + "SELECT user_id, dept_id FROM t_user WHERE user_name IN ('a', 'b', 'c', 'd', 'e', 'f', 'g', 'h', 'i', 'j');\n"
+                + "SELECT dept_id FROM t_dept";
+        try {
+            java.nio.file.Path input = java.nio.file.Files.createTempFile("sql-file", ".sql");
+            java.nio.file.Path output = java.nio.file.Files.createTempFile("sql-file", ".out.sql");
+            java.nio.file.Files.write(input, script.getBytes(java.nio.charset.StandardCharsets.UTF_8));
+            SqlFileTransformer.Summary summary = SqlFileTransformer.builder()
+                    .plan(SqlRewritePlan.builder().underscoreToCamelCase().mapTable("t_user", "sys_user").build())
+                    .threads(2)
+                    .windowSize(48)
+                    .build()
+                    .transform(input, output);
+            System.out.println(new String(java.nio.file.Files.readAllBytes(output), java.nio.charset.StandardCharsets.UTF_8));
+            System.out.println("统计: 语句数 " + summary.getStatements() + "，未完全解析 " + summary.getPassThrough());
+            for (SqlFileTransformer.StageStats stage : summary.getStages()) {
+                System.out.println("阶段 " + stage.getName() + ": 批次 " + stage.getBatches() + "，字节 " + stage.getBytes());
+            }
+            java.nio.file.Files.delete(input);
+            java.nio.file.Files.delete(output);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        // 测试22: 字段、子句和连接条件以 -- 注释结尾时保留换行，FROM中各项之间的注释原样写回
+        System.out.println("\n=== 测试22: 行尾注释 ===");
+        String[] commentTests = {
+                "SELECT user_id -- 主键\nFROM t_user WHERE user_name = 'x'",
+                "SELECT user_id FROM t_user WHERE user_id = 1 -- 条件\nORDER BY user_name",
+                "SELECT a.user_id FROM t_user a -- 用户\nJOIN t_dept d ON a.dept_id = d.dept_id -- 连接\nWHERE a.user_id = 1",
+                "SELECT user_id FROM t_user /* 用户 */ WHERE user_id = 1",
+                "SELECT a.user_id FROM /* 主表 */ t_user a, -- 部门\nt_dept d LEFT /* 外连接 */ JOIN t_role r USING (role_id) /* 角色 */ WHERE a.user_id = 1"
+        };
+        for (String sql : commentTests) {
+            factory.fromSql(sql);
+            factory.rewrite(SqlRewritePlan.builder().underscoreToCamelCase().mapTable("t_user", "sys_user").build());
+            System.out.println("原SQL: " + sql.replace("\n", "\\n"));
+            System.out.println("转换后: " + factory.toSqlStr().replace("\n", "\\n") + "  " + factory.getParseResult().getStatus());
+        }
+
+        // 测试23: 分页和加锁子句原样复制，不参与列名转换
+        System.out.println("\n=== 测试23: 分页和加锁子句 ===");
+        String[] tailTests = {
+                "SELECT user_id, user_name FROM t_user WHERE dept_id = 1 ORDER BY create_time DESC LIMIT 10 OFFSET 20",
+                "SELECT user_id FROM t_user ORDER BY user_id OFFSET 10 ROWS FETCH NEXT 5 ROWS ONLY",
+                "SELECT user_name FROM t_user WHERE user_id = 1 FOR UPDATE",
+                "SELECT user_name FROM t_user WHERE user_id = 1 LIMIT 1 FOR SHARE",
+                // 限定列名中的 offset、limit 不是子句关键字
+                "SELECT t.user_id FROM t_user t WHERE t.offset = 1 AND t.limit > 0 ORDER BY t.user_id"
+        };
+        for (String sql : tailTests) {
+            factory.fromSql(sql);
+            factory.所有字段下划线转驼峰();
+            System.out.println("原SQL: " + sql);
+            System.out.println("转换后: " + factory.toSqlStr() + "  " + factory.getParseResult().getStatus());
+        }
+
         // 测试5: 更多INSERT语句场景
         System.out.println("\n=== 测试5: 更多INSERT语句场景 ===");
         String[] insertTests = {
                 "INSERT INTO users (id, name) VALUES (1, 'test')",
                 "INSERT INTO db.users (user_id, user_name) VALUES (2, 'John Doe')",
-                "INSERT INTO user_info (id, name, email) VALUES (3, 'Jane', 'jane@example.com')"
+                "INSERT INTO user_info (id, name, email) VALUES (3, 'Jane', 'jane@example.com')",
+                "INSERT INTO t_user (user_id,user_name) VALUES (1,'a'),(2,'b'), (3,'c')",
+                "INSERT INTO t_user (user_id, user_name) VALUES (1, 'a'), (2, 'b') ON DUPLICATE KEY UPDATE user_name = VALUES(user_name)"
         };
 
         for (String sql : insertTests) {
@@ -1089,6 +2545,8 @@ interface SqlParser {
     String toSqlStr();
     // 模型转sql文本过程
     void fromSql(String sql);
+    // 最近一次fromSql的解析结果，解析失败的部分原样输出；子句中的子查询在改写或输出时才解析
+    ParseResult getParseResult();
 }
 
 interface FieldEditor {
@@ -1099,6 +2557,18 @@ interface FieldEditor {
 // 表名映射能力, 初始sql文本中的表名需要修改为别的表名
 interface TableNameMap {
     void addTableNameMap(String oldName, String newName);
+    // 批量添加映射，只遍历一次语句
+    void addTableNameMaps(Map<String, String> mappings);
+    // 使用预先构建的映射字典，之后解析的每条语句都会按字典映射
+    void setTableNameDictionary(TableNameDictionary dictionary);
+    // 通配映射规则，如 t_bgt_* -> bgt.*、*_2024 -> *_hist，新表名中的*依次替换为规则*匹配的部分
+    void addTableNameRule(String pattern, String replacement);
+    void addTableNameRules(Map<String, String> rules);
+}
+
+// 组合改写能力, 多个改写操作一次遍历完成
+interface SqlRewriter {
+    void rewrite(SqlRewritePlan plan);
 }
 
 // 查询字段别名
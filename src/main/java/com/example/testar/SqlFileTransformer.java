@@ -0,0 +1,640 @@
+package com.example.testar;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 转换整个.sql文件（如导出的数据库脚本），按 {@link SqlRewritePlan} 改写其中每条语句
+ * 输入文件按窗口内存映射，直接在映射的字节上查找语句边界（引号和注释外的分号），
+ * 语句按批交给工作线程解码、解析和改写，结果按原顺序经 {@link SqlChannelWriter} 写入输出文件
+ * 语句之间的空白和注释原样保留；不支持或解析失败的语句原样输出，不中断转换
+ *
+ * 转换分为三个阶段，之间用有界队列连接：
+ * read      调用线程映射文件、切分语句、组成批次
+ * transform 多个工作线程解码、解析、改写、渲染
+ * write     一个写线程按原顺序写出
+ * 同时在途的批次数有上限，写出跟不上时读取阻塞等待；各阶段的忙碌和等待时间见 {@link Summary#getStages()}，
+ * 等待少、忙碌多的阶段就是瓶颈
+ */
+public final class SqlFileTransformer {
+
+    private static final int DEFAULT_WINDOW_SIZE = 256 * 1024 * 1024;
+    // 一批最多的语句数和字节数，批次太小时调度开销占比高，太大时内存中积压的结果多
+    private static final int BATCH_STATEMENTS = 256;
+    private static final int BATCH_BYTES = 1024 * 1024;
+
+    private final SqlRewritePlan plan;
+    private final int threads;
+    private final int windowSize;
+
+    private SqlFileTransformer(Builder builder) {
+        this.plan = builder.plan;
+        this.threads = builder.threads;
+        this.windowSize = builder.windowSize;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * 转换文件，输出文件已存在时覆盖
+     * @param input 输入文件，UTF-8编码
+     * @param output 输出文件
+     * @return 转换统计
+     */
+    public Summary transform(Path input, Path output) throws IOException {
+        Summary summary = new Summary();
+        ExecutorService executor = Executors.newFixedThreadPool(threads + 1, new WorkerFactory());
+        try (FileChannel in = FileChannel.open(input, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(output, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                     StandardOpenOption.TRUNCATE_EXISTING);
+             SqlChannelWriter writer = new SqlChannelWriter(out)) {
+            Pipeline pipeline = new Pipeline(writer, summary);
+            for (int i = 0; i < threads; i++) {
+                executor.execute(pipeline::transformStage);
+            }
+            Future<?> writing = executor.submit(pipeline::writeStage);
+            long start = System.nanoTime();
+            try {
+                read(in, pipeline);
+            } finally {
+                pipeline.read.busyNanos.add(System.nanoTime() - start - pipeline.read.waitNanos.sum());
+                pipeline.finish();
+                // read出错时也要等write阶段结束再关闭writer：关闭会把缓冲区还回共享的池，write线程可能还在写
+                awaitQuietly(writing, executor);
+            }
+            await(writing);
+            pipeline.rethrow();
+            writer.flush();
+            summary.bytesRead = in.size();
+            summary.bytesWritten = writer.getBytesWritten();
+            summary.stages = pipeline.stages();
+        } finally {
+            executor.shutdownNow();
+        }
+        for (StageStats stage : summary.stages) {
+            SqlTransformMetrics.recordStage(stage.name, stage.getBytes(), stage.getBusyNanos(), stage.getWaitNanos());
+        }
+        return summary;
+    }
+
+    // read阶段：映射文件，切分语句并组成批次
+    private void read(FileChannel in, Pipeline pipeline) throws IOException {
+        long size = in.size();
+        long base = 0;
+        int window = windowSize;
+        ByteBuffer buffer = map(in, base, window, size);
+        Batch batch = new Batch(buffer);
+        long start = 0;
+        while (start < size && !pipeline.isFailed()) {
+            int from = (int) (start - base);
+            int end = findStatementEnd(buffer, from, buffer.limit());
+            if (end == -1) {
+                if (base + buffer.limit() == size) {
+                    // 最后一条语句没有分号
+                    batch.add(from, buffer.limit(), false);
+                    break;
+                }
+                // 语句跨过窗口末尾：从语句开头重新映射，一个窗口放不下一条语句时窗口加倍
+                if (start == base) {
+                    if (window == Integer.MAX_VALUE) {
+                        throw new IOException("Statement at offset " + start + " exceeds " + window + " bytes");
+                    }
+                    window = (int) Math.min((long) window * 2, Integer.MAX_VALUE);
+                }
+                pipeline.submit(batch);
+                base = start;
+                buffer = map(in, base, window, size);
+                batch = new Batch(buffer);
+                continue;
+            }
+            batch.add(from, end, true);
+            start = base + end + 1;
+            if (batch.isFull()) {
+                pipeline.submit(batch);
+                batch = new Batch(buffer);
+            }
+        }
+        pipeline.submit(batch);
+    }
+
+    private static ByteBuffer map(FileChannel in, long base, int window, long size) throws IOException {
+        return in.map(FileChannel.MapMode.READ_ONLY, base, Math.min(window, size - base));
+    }
+
+    // 等待结束，不关心结果；被中断时先中断所有工作线程让它们退出，仍然等到结束
+    private static void awaitQuietly(Future<?> future, ExecutorService executor) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                future.get();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+                executor.shutdownNow();
+            } catch (ExecutionException | CancellationException e) {
+                break;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void await(Future<?> future) throws IOException {
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while transforming SQL file");
+        } catch (ExecutionException e) {
+            throw new IOException("Failed to transform SQL file", e.getCause());
+        }
+    }
+
+    /**
+     * 在[from, to)中查找语句结束的分号，引号和注释中的分号不算
+     * UTF-8中多字节字符的每个字节都不小于0x80，不会与引号、分号等ASCII字符混淆，可以直接按字节扫描
+     * @return 分号的位置；没有找到，或者引号、注释跨过了to时返回-1
+     */
+    static int findStatementEnd(ByteBuffer buffer, int from, int to) {
+        for (int i = from; i < to; i++) {
+            byte b = buffer.get(i);
+            if (b == ';') {
+                return i;
+            }
+            if (b == '\'' || b == '"' || b == '`') {
+                i = skipQuoted(buffer, i, to);
+            } else if (b == '-' || b == '/') {
+                if (i + 1 >= to) {
+                    return -1;
+                }
+                byte next = buffer.get(i + 1);
+                if (b == '-' && next == '-') {
+                    i = indexOf(buffer, (byte) '\n', i + 2, to);
+                } else if (b == '/' && next == '*') {
+                    i = indexOf(buffer, (byte) '*', (byte) '/', i + 2, to);
+                }
+            }
+            if (i == -1) {
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+    // 与 SqlScanner.skipQuoted 相同：两个连续引号视为转义，反斜杠是否转义同样由 SqlScanner.BACKSLASH_ESCAPES 决定
+    private static int skipQuoted(ByteBuffer buffer, int pos, int to) {
+        byte quote = buffer.get(pos);
+        for (int i = pos + 1; i < to; i++) {
+            byte b = buffer.get(i);
+            if (b == '\\' && quote == '\'' && SqlScanner.BACKSLASH_ESCAPES) {
+                i++;
+            } else if (b == quote) {
+                if (i + 1 >= to) {
+                    // 不知道后面是否还有一个引号
+                    return -1;
+                }
+                if (buffer.get(i + 1) == quote) {
+                    i++;
+                } else {
+                    return i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    private static int indexOf(ByteBuffer buffer, byte b, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (buffer.get(i) == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // 返回两个字节中第二个的位置
+    private static int indexOf(ByteBuffer buffer, byte first, byte second, int from, int to) {
+        for (int i = from; i + 1 < to; i++) {
+            if (buffer.get(i) == first && buffer.get(i + 1) == second) {
+                return i + 1;
+            }
+        }
+        return -1;
+    }
+
+    // 一批连续的语句，在工作线程中解码、改写并渲染到output
+    private final class Batch {
+        private final ByteBuffer source;
+        // 在文件中的顺序，写出时按它排序
+        private long sequence;
+        private Exception failure;
+        private int[] starts = new int[16];
+        private int[] ends = new int[16];
+        private int count;
+        private boolean terminated = true;
+        private int bytes;
+        private final StringBuilder output = new StringBuilder();
+        private int statements;
+        private int passThrough;
+
+        Batch(ByteBuffer source) {
+            this.source = source;
+        }
+
+        void add(int start, int end, boolean terminated) {
+            if (count == starts.length) {
+                starts = Arrays.copyOf(starts, count * 2);
+                ends = Arrays.copyOf(ends, count * 2);
+            }
+            starts[count] = start;
+            ends[count] = end;
+            count++;
+            bytes += end - start;
+            this.terminated = terminated;
+        }
+
+        boolean isFull() {
+            return count >= BATCH_STATEMENTS || bytes >= BATCH_BYTES;
+        }
+
+        void transform() throws IOException {
+            // 映射的缓冲区在批次之间共享，各自复制一份位置信息
+            ByteBuffer view = source.duplicate();
+            byte[] scratch = new byte[0];
+            SqlFactory factory = new SqlFactory();
+            output.ensureCapacity(bytes + bytes / 8);
+            for (int i = 0; i < count; i++) {
+                int length = ends[i] - starts[i];
+                if (scratch.length < length) {
+                    scratch = new byte[Math.max(length, scratch.length * 2)];
+                }
+                view.limit(ends[i]).position(starts[i]);
+                view.get(scratch, 0, length);
+                transformStatement(factory, new String(scratch, 0, length, StandardCharsets.UTF_8));
+                if (i < count - 1 || terminated) {
+                    output.append(';');
+                }
+            }
+        }
+
+        private void transformStatement(SqlFactory factory, String text) throws IOException {
+            int bodyStart = SqlScanner.skipTrivia(text, 0);
+            int bodyEnd = text.length();
+            while (bodyEnd > bodyStart && Character.isWhitespace(text.charAt(bodyEnd - 1))) {
+                bodyEnd--;
+            }
+            output.append(text, 0, bodyStart);
+            if (bodyStart < bodyEnd) {
+                factory.fromSql(text.substring(bodyStart, bodyEnd));
+                factory.rewrite(plan);
+                factory.writeSql(output);
+                statements++;
+                if (!factory.getParseResult().isSuccess()) {
+                    passThrough++;
+                }
+            }
+            output.append(text, bodyEnd, text.length());
+        }
+    }
+
+    // 一次转换的三个阶段和连接它们的队列
+    private final class Pipeline {
+        // 队列结束标记，每个transform线程一个
+        private final Batch end = new Batch(null);
+        // 同时在途（排队、转换中、等待按顺序写出）的批次数上限
+        private final Semaphore inFlight = new Semaphore(threads * 4);
+        private final BlockingQueue<Batch> transformQueue = new ArrayBlockingQueue<>(threads * 2);
+        private final BlockingQueue<Batch> writeQueue = new ArrayBlockingQueue<>(threads * 5);
+        private final StageStats read = new StageStats("read");
+        private final StageStats transform = new StageStats("transform");
+        private final StageStats write = new StageStats("write");
+        private final SqlChannelWriter writer;
+        private final Summary summary;
+        private long nextSequence;
+        // 任一阶段失败后读取停止，已读取的批次不再转换和写出
+        private volatile Exception failure;
+
+        Pipeline(SqlChannelWriter writer, Summary summary) {
+            this.writer = writer;
+            this.summary = summary;
+        }
+
+        boolean isFailed() {
+            return failure != null;
+        }
+
+        // 在途批次达到上限或transform队列满时阻塞，即背压
+        void submit(Batch batch) throws IOException {
+            if (batch.count == 0) {
+                return;
+            }
+            batch.sequence = nextSequence++;
+            long start = System.nanoTime();
+            try {
+                inFlight.acquire();
+                transformQueue.put(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while transforming SQL file");
+            }
+            read.waitNanos.add(System.nanoTime() - start);
+            read.record(batch.bytes, 0);
+        }
+
+        // 读取结束，通知每个transform线程退出
+        void finish() {
+            try {
+                for (int i = 0; i < threads; i++) {
+                    transformQueue.put(end);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        void transformStage() {
+            try {
+                while (true) {
+                    long waitStart = System.nanoTime();
+                    Batch batch = transformQueue.take();
+                    long start = System.nanoTime();
+                    transform.waitNanos.add(start - waitStart);
+                    if (batch != end && failure == null) {
+                        try {
+                            batch.transform();
+                        } catch (IOException | RuntimeException e) {
+                            batch.failure = e;
+                        }
+                        transform.record(batch.bytes, System.nanoTime() - start);
+                    }
+                    writeQueue.put(batch);
+                    if (batch == end) {
+                        return;
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        // 批次完成的顺序与读取顺序不同，先放入重排序堆，轮到时再写出
+        void writeStage() {
+            PriorityQueue<Batch> reorder = new PriorityQueue<>(Comparator.comparingLong((Batch batch) -> batch.sequence));
+            long next = 0;
+            int ended = 0;
+            try {
+                while (ended < threads) {
+                    long waitStart = System.nanoTime();
+                    Batch batch = writeQueue.take();
+                    write.waitNanos.add(System.nanoTime() - waitStart);
+                    if (batch == end) {
+                        ended++;
+                        continue;
+                    }
+                    reorder.add(batch);
+                    while (!reorder.isEmpty() && reorder.peek().sequence == next) {
+                        writeBatch(reorder.poll());
+                        next++;
+                        inFlight.release();
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private void writeBatch(Batch batch) {
+            if (failure != null) {
+                return;
+            }
+            if (batch.failure != null) {
+                failure = batch.failure;
+                return;
+            }
+            long start = System.nanoTime();
+            try {
+                writer.append(batch.output);
+            } catch (IOException | RuntimeException e) {
+                failure = e;
+                return;
+            }
+            write.record(batch.bytes, System.nanoTime() - start);
+            summary.statements += batch.statements;
+            summary.passThrough += batch.passThrough;
+        }
+
+        void rethrow() throws IOException {
+            Exception e = failure;
+            if (e instanceof IOException) {
+                throw (IOException) e;
+            }
+            if (e != null) {
+                throw new IOException("Failed to transform SQL file", e);
+            }
+        }
+
+        List<StageStats> stages() {
+            return Collections.unmodifiableList(Arrays.asList(read, transform, write));
+        }
+    }
+
+    /**
+     * 一个阶段的统计：处理的批次数和输入字节数，忙碌时间和在队列上等待的时间
+     * transform阶段是所有工作线程的合计
+     */
+    public static final class StageStats {
+        private final String name;
+        private final LongAdder batches = new LongAdder();
+        private final LongAdder bytes = new LongAdder();
+        private final LongAdder busyNanos = new LongAdder();
+        private final LongAdder waitNanos = new LongAdder();
+
+        private StageStats(String name) {
+            this.name = name;
+        }
+
+        private void record(int batchBytes, long elapsedNanos) {
+            batches.increment();
+            bytes.add(batchBytes);
+            busyNanos.add(elapsedNanos);
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getBatches() {
+            return batches.sum();
+        }
+
+        public long getBytes() {
+            return bytes.sum();
+        }
+
+        public long getBusyNanos() {
+            return busyNanos.sum();
+        }
+
+        public long getWaitNanos() {
+            return waitNanos.sum();
+        }
+
+        @Override
+        public String toString() {
+            return name + "{batches=" + getBatches() + ", bytes=" + getBytes()
+                    + ", busyMs=" + getBusyNanos() / 1_000_000 + ", waitMs=" + getWaitNanos() / 1_000_000 + "}";
+        }
+    }
+
+    private static final class WorkerFactory implements ThreadFactory {
+        private final AtomicInteger counter = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable task) {
+            Thread thread = new Thread(task, "sql-file-transformer-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
+    public static final class Summary {
+        private long statements;
+        private long passThrough;
+        private long bytesRead;
+        private long bytesWritten;
+        private List<StageStats> stages = new ArrayList<>();
+
+        private Summary() {
+        }
+
+        // 转换的语句数，不含只有空白和注释的部分
+        public long getStatements() {
+            return statements;
+        }
+
+        // 没有完全解析的语句数，其中不能解析的部分原样输出
+        public long getPassThrough() {
+            return passThrough;
+        }
+
+        public long getBytesRead() {
+            return bytesRead;
+        }
+
+        public long getBytesWritten() {
+            return bytesWritten;
+        }
+
+        // 按read、transform、write顺序
+        public List<StageStats> getStages() {
+            return stages;
+        }
+
+        @Override
+        public String toString() {
+            return "statements=" + statements + ", passThrough=" + passThrough
+                    + ", bytesRead=" + bytesRead + ", bytesWritten=" + bytesWritten + ", stages=" + stages;
+        }
+    }
+
+    public static class Builder {
+        private SqlRewritePlan plan = SqlRewritePlan.builder().build();
+        private int threads = Runtime.getRuntime().availableProcessors();
+        private int windowSize = DEFAULT_WINDOW_SIZE;
+
+        private Builder() {
+        }
+
+        public Builder plan(SqlRewritePlan plan) {
+            this.plan = plan;
+            return this;
+        }
+
+        // 工作线程数，默认为CPU核数
+        public Builder threads(int threads) {
+            if (threads <= 0) {
+                throw new IllegalArgumentException("Threads must be positive: " + threads);
+            }
+            this.threads = threads;
+            return this;
+        }
+
+        // 每次映射的字节数，超过该长度的语句会临时加大窗口
+        public Builder windowSize(int windowSize) {
+            if (windowSize <= 0) {
+                throw new IllegalArgumentException("Window size must be positive: " + windowSize);
+            }
+            this.windowSize = windowSize;
+            return this;
+        }
+
+        public SqlFileTransformer build() {
+            return new SqlFileTransformer(this);
+        }
+    }
+
+    /**
+     * 命令行：SqlFileTransformer 输入文件 输出文件 [--camel-case | --underscore] [--aliases]
+     * [--map 旧表名=新表名]... [--threads N]
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: SqlFileTransformer <input> <output> [--camel-case | --underscore] [--aliases]"
+                    + " [--map old=new]... [--threads N]");
+            System.exit(2);
+        }
+        SqlRewritePlan.Builder plan = SqlRewritePlan.builder();
+        Builder builder = builder();
+        for (int i = 2; i < args.length; i++) {
+            switch (args[i]) {
+                case "--camel-case":
+                    plan.underscoreToCamelCase();
+                    break;
+                case "--underscore":
+                    plan.camelCaseToUnderscore();
+                    break;
+                case "--aliases":
+                    plan.addCamelCaseAliases();
+                    break;
+                case "--map":
+                    String[] mapping = args[++i].split("=", 2);
+                    plan.mapTable(mapping[0], mapping[1]);
+                    break;
+                case "--threads":
+                    builder.threads(Integer.parseInt(args[++i]));
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+        long start = System.nanoTime();
+        Summary summary = builder.plan(plan.build()).build().transform(Paths.get(args[0]), Paths.get(args[1]));
+        System.out.println(summary + ", elapsedMs=" + (System.nanoTime() - start) / 1_000_000);
+    }
+}
@@ -0,0 +1,96 @@
+package com.example.testar;
+
+/**
+ * SQL关键字集合，用于区分关键字和列名
+ * 类加载时为固定的关键字表寻找一个无冲突的哈希种子（完美哈希），
+ * 查找时只计算一次哈希、比较一个槽位，不需要截取子串或转大小写
+ */
+final class SqlKeywords {
+
+    private static final String[] KEYWORDS = {
+            "select", "from", "where", "and", "or", "not", "null", "is", "in", "exists",
+            "between", "like", "ilike", "rlike", "regexp", "similar", "escape", "as", "on", "using",
+            "join", "inner", "left", "right", "full", "outer", "cross", "natural", "group", "by",
+            "order", "having", "asc", "desc", "nulls", "first", "last", "case", "when", "then",
+            "else", "end", "distinct", "all", "any", "some", "union", "intersect", "except", "minus",
+            "limit", "offset", "fetch", "next", "rows", "row", "only", "top", "with", "recursive",
+            "over", "partition", "within", "range", "unbounded", "preceding", "following", "current",
+            "true", "false", "unknown", "interval", "date", "time", "timestamp", "collate", "cast",
+            "year", "month", "day", "hour", "minute", "second", "zone", "at", "local",
+            "current_date", "current_time", "current_timestamp", "current_user", "sysdate",
+            "systimestamp", "localtimestamp", "rownum", "rowid", "level", "prior", "connect", "start",
+            "set", "values", "into", "update", "delete", "insert", "default", "for", "of", "nowait",
+            "skip", "locked", "siblings", "dual", "duplicate", "key", "conflict", "do", "nothing"};
+
+    private static final String[] TABLE;
+    private static final int MASK;
+    private static final int SEED;
+
+    static {
+        int size = Integer.highestOneBit(KEYWORDS.length * 4);
+        while (true) {
+            int seed = findSeed(size);
+            if (seed != -1) {
+                SEED = seed;
+                break;
+            }
+            size <<= 1;
+        }
+        MASK = size - 1;
+        TABLE = new String[size];
+        for (String keyword : KEYWORDS) {
+            TABLE[hash(keyword, 0, keyword.length(), SEED) & MASK] = keyword;
+        }
+    }
+
+    private SqlKeywords() {
+    }
+
+    /**
+     * 判断text中[start, end)是否为关键字，忽略大小写
+     */
+    static boolean isKeyword(CharSequence text, int start, int end) {
+        String keyword = TABLE[hash(text, start, end, SEED) & MASK];
+        if (keyword == null || keyword.length() != end - start) {
+            return false;
+        }
+        for (int i = 0; i < keyword.length(); i++) {
+            if (keyword.charAt(i) != Character.toLowerCase(text.charAt(start + i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static boolean isKeyword(CharSequence word) {
+        return isKeyword(word, 0, word.length());
+    }
+
+    // 在给定表长下尝试种子，所有关键字落在不同槽位即可
+    private static int findSeed(int size) {
+        for (int seed = 1; seed < 10000; seed++) {
+            boolean[] used = new boolean[size];
+            boolean collision = false;
+            for (String keyword : KEYWORDS) {
+                int slot = hash(keyword, 0, keyword.length(), seed) & (size - 1);
+                if (used[slot]) {
+                    collision = true;
+                    break;
+                }
+                used[slot] = true;
+            }
+            if (!collision) {
+                return seed;
+            }
+        }
+        return -1;
+    }
+
+    private static int hash(CharSequence text, int start, int end, int seed) {
+        int hash = seed * 0x9E3779B9;
+        for (int i = start; i < end; i++) {
+            hash = (hash ^ Character.toLowerCase(text.charAt(i))) * 0x01000193;
+        }
+        return hash ^ (hash >>> 15);
+    }
+}
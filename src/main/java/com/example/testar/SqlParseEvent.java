@@ -0,0 +1,45 @@
+package com.example.testar;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR事件：SqlFactory.fromSql 解析一条SQL
+ * 只有开启记录且启用了该事件时才创建和提交，未记录时只有一次判断
+ */
+@Name("com.example.testar.SqlParse")
+@Label("SQL Parse")
+@Category({"SQL Transform"})
+@Description("SqlFactory解析一条SQL")
+@StackTrace(false)
+class SqlParseEvent extends Event {
+
+    private static final EventType TYPE = EventType.getEventType(SqlParseEvent.class);
+
+    @Label("Statement Type")
+    String statementType;
+
+    @Label("Status")
+    @Description("PARSED、PARTIAL、FAILED、UNSUPPORTED")
+    String status;
+
+    @Label("Input Length")
+    @Description("SQL长度（字符）")
+    int inputLength;
+
+    @Label("Scope Count")
+    @Description("解析的作用域数（子查询、CTE、集合运算分支），相同文本只计一次")
+    int scopeCount;
+
+    @Label("Error Count")
+    int errorCount;
+
+    static boolean isRecording() {
+        return TYPE.isEnabled();
+    }
+}
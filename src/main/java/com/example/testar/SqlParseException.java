@@ -0,0 +1,31 @@
+package com.example.testar;
+
+/**
+ * SQL解析错误，记录出错位置（在完整SQL中的偏移，未知时为-1）
+ * 解析失败的语句原样输出，错误只用于诊断，不生成堆栈，错误输入的解析开销与正常输入相当
+ */
+public class SqlParseException extends IllegalArgumentException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int position;
+
+    public SqlParseException(String message, int position) {
+        super(message);
+        this.position = position;
+    }
+
+    public SqlParseException(String message, int position, Throwable cause) {
+        super(message, cause);
+        this.position = position;
+    }
+
+    public int getPosition() {
+        return position;
+    }
+
+    @Override
+    public synchronized Throwable fillInStackTrace() {
+        return this;
+    }
+}
@@ -0,0 +1,107 @@
+package com.example.testar;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * SQL改写计划：记录需要执行的改写操作，交给 {@link SqlFactory#rewrite(SqlRewritePlan)} 一次遍历完成
+ * 表名映射、限定名改写和列名转换在同一次访问中处理，每段文本只扫描一次，
+ * 组合多个操作的耗时与单个操作相当；计划不可变，可以在多条SQL之间复用
+ */
+public final class SqlRewritePlan {
+
+    enum Naming {NONE, CAMEL_CASE, UNDERSCORE}
+
+    private final Naming naming;
+    private final Function<String, String> tableMapping;
+    private final boolean camelCaseAliases;
+
+    private SqlRewritePlan(Builder builder) {
+        this.naming = builder.naming;
+        this.camelCaseAliases = builder.camelCaseAliases;
+
+        // 精确映射优先于字典
+        Map<String, String> exactMappings = new HashMap<>(builder.exactMappings);
+        TableNameDictionary dictionary = builder.dictionary;
+        if (exactMappings.isEmpty() && dictionary == null) {
+            tableMapping = null;
+        } else if (dictionary == null) {
+            tableMapping = table -> exactMappings.get(table.toLowerCase());
+        } else if (exactMappings.isEmpty()) {
+            tableMapping = dictionary::lookup;
+        } else {
+            tableMapping = table -> {
+                String newName = exactMappings.get(table.toLowerCase());
+                return newName != null ? newName : dictionary.lookup(table);
+            };
+        }
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    Naming getNaming() {
+        return naming;
+    }
+
+    // 没有表名映射时返回null
+    Function<String, String> getTableMapping() {
+        return tableMapping;
+    }
+
+    boolean isCamelCaseAliases() {
+        return camelCaseAliases;
+    }
+
+    public static class Builder {
+        private Naming naming = Naming.NONE;
+        private final Map<String, String> exactMappings = new HashMap<>();
+        private TableNameDictionary dictionary;
+        private boolean camelCaseAliases;
+
+        private Builder() {
+        }
+
+        // 所有字段下划线转驼峰
+        public Builder underscoreToCamelCase() {
+            naming = Naming.CAMEL_CASE;
+            return this;
+        }
+
+        // 所有字段驼峰转下划线
+        public Builder camelCaseToUnderscore() {
+            naming = Naming.UNDERSCORE;
+            return this;
+        }
+
+        public Builder mapTable(String oldName, String newName) {
+            exactMappings.put(oldName.toLowerCase(), newName);
+            return this;
+        }
+
+        public Builder mapTables(Map<String, String> mappings) {
+            for (Map.Entry<String, String> entry : mappings.entrySet()) {
+                mapTable(entry.getKey(), entry.getValue());
+            }
+            return this;
+        }
+
+        // 批量映射字典，包括通配规则
+        public Builder tableNameDictionary(TableNameDictionary dictionary) {
+            this.dictionary = dictionary;
+            return this;
+        }
+
+        // 所有查询字段软添加驼峰别名
+        public Builder addCamelCaseAliases() {
+            camelCaseAliases = true;
+            return this;
+        }
+
+        public SqlRewritePlan build() {
+            return new SqlRewritePlan(this);
+        }
+    }
+}
@@ -0,0 +1,327 @@
+package com.example.testar;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * SQL文本扫描工具：跳过引号、匹配括号、查找顶层关键字
+ * “顶层”指不在括号、引号和注释内的位置，子查询里的关键字不会被误认为外层子句
+ * 所有扫描共用同一个词法判断（{@link #skipLexical}），只按位置前进，不复制文本
+ */
+final class SqlScanner {
+
+    // 字符串常量中的反斜杠是否转义下一个字符，由 {@link SqlDialect} 决定，文件转换的字节扫描也使用它
+    static final boolean BACKSLASH_ESCAPES = SqlDialect.current().isBackslashEscapes();
+
+    private SqlScanner() {
+    }
+
+    static boolean isWordChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '_' || c == '$';
+    }
+
+    static int skipSpaces(String text, int pos) {
+        while (pos < text.length() && Character.isWhitespace(text.charAt(pos))) {
+            pos++;
+        }
+        return pos;
+    }
+
+    // 跳过空白和注释
+    static int skipTrivia(String text, int pos) {
+        while (true) {
+            pos = skipSpaces(text, pos);
+            if (text.startsWith("--", pos) || text.startsWith("/*", pos)) {
+                pos = skipLexical(text, pos) + 1;
+            } else {
+                return pos;
+            }
+        }
+    }
+
+    // 跳过空白和注释，注释原文追加到comments（为null时丢弃），-- 注释后保留换行
+    static int skipTrivia(String text, int pos, StringBuilder comments) {
+        if (comments == null) {
+            return skipTrivia(text, pos);
+        }
+        while (true) {
+            pos = skipSpaces(text, pos);
+            boolean lineComment = text.startsWith("--", pos);
+            if (!lineComment && !text.startsWith("/*", pos)) {
+                return pos;
+            }
+            int end = skipLexical(text, pos) + 1;
+            if (comments.length() > 0 && comments.charAt(comments.length() - 1) != '\n') {
+                comments.append(' ');
+            }
+            comments.append(text, pos, end);
+            if (lineComment) {
+                comments.append('\n');
+            }
+            pos = end;
+        }
+    }
+
+    // [from, to)中最后一个c的位置，只在范围内向前查找，没有时返回-1
+    static int lastIndexOf(String text, char c, int from, int to) {
+        for (int i = to - 1; i >= from; i--) {
+            if (text.charAt(i) == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    static int scanWord(String text, int pos) {
+        while (pos < text.length() && isWordChar(text.charAt(pos))) {
+            pos++;
+        }
+        return pos;
+    }
+
+    // 表名可以带库名和引号，如 db."user"
+    static int scanName(String text, int pos) {
+        while (pos < text.length()) {
+            char c = text.charAt(pos);
+            if (c == '"' || c == '`') {
+                pos = skipQuoted(text, pos) + 1;
+            } else if (isWordChar(c) || c == '.') {
+                pos++;
+            } else {
+                break;
+            }
+        }
+        return pos;
+    }
+
+    // 返回与pos处引号匹配的结束引号位置，两个连续引号视为转义；MySQL方言下字符串常量中的反斜杠也转义下一个字符
+    static int skipQuoted(String text, int pos) {
+        char quote = text.charAt(pos);
+        for (int i = pos + 1; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '\\' && quote == '\'' && BACKSLASH_ESCAPES) {
+                i++;
+            } else if (c == quote) {
+                if (i + 1 < text.length() && text.charAt(i + 1) == quote) {
+                    i++;
+                } else {
+                    return i;
+                }
+            }
+        }
+        return text.length() - 1;
+    }
+
+    // 字符串常量、带引号的标识符或注释可能从c开始
+    static boolean isLexicalStart(char c) {
+        return c == '\'' || c == '"' || c == '`' || c == '-' || c == '/';
+    }
+
+    // 跳过pos处开始的字符串常量、带引号的标识符或注释，其中的逗号、括号和关键字都不算顶层
+    // -- 注释到行尾，/* 注释到 */ 为止，未闭合时到文本末尾
+    // 返回该单元最后一个字符的位置，pos处不是这些单元时返回pos
+    static int skipLexical(String text, int pos) {
+        char c = text.charAt(pos);
+        if (c == '\'' || c == '"' || c == '`') {
+            return skipQuoted(text, pos);
+        }
+        if (c == '-' && text.startsWith("--", pos)) {
+            int lineEnd = text.indexOf('\n', pos + 2);
+            return lineEnd == -1 ? text.length() - 1 : lineEnd - 1;
+        }
+        if (c == '/' && text.startsWith("/*", pos)) {
+            int close = text.indexOf("*/", pos + 2);
+            return close == -1 ? text.length() - 1 : close + 1;
+        }
+        return pos;
+    }
+
+    // [from, to)是否以 -- 注释结尾，后面拼接其他内容时需要先换行
+    static boolean endsWithLineComment(String text, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (isLexicalStart(text.charAt(i))) {
+                int end = skipLexical(text, i);
+                if (end >= to - 1 && text.startsWith("--", i)) {
+                    return true;
+                }
+                i = end;
+            }
+        }
+        return false;
+    }
+
+    // 返回与pos处左括号匹配的右括号位置
+    static int matchParen(String text, int pos) {
+        int depth = 0;
+        for (int i = pos; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (isLexicalStart(c)) {
+                i = skipLexical(text, i);
+            } else if (c == '(') {
+                depth++;
+            } else if (c == ')' && --depth == 0) {
+                return i;
+            }
+        }
+        throw new SqlParseException("Unbalanced parenthesis at position " + pos, pos);
+    }
+
+    /**
+     * 判断pos处是否以关键字开头，关键字可以由多个单词组成（如 GROUP BY），单词间允许任意空白
+     * @return 关键字结束位置，不匹配返回-1
+     */
+    static int matchKeyword(String text, int pos, String keyword) {
+        if (pos > 0 && pos <= text.length() && isWordChar(text.charAt(pos - 1))) {
+            return -1;
+        }
+        // 逐个单词比较，关键字中的空格对应原文中至少一个空白字符
+        int i = pos;
+        int wordStart = 0;
+        while (true) {
+            int wordEnd = keyword.indexOf(' ', wordStart);
+            int length = (wordEnd == -1 ? keyword.length() : wordEnd) - wordStart;
+            if (!text.regionMatches(true, i, keyword, wordStart, length)) {
+                return -1;
+            }
+            i += length;
+            if (wordEnd == -1) {
+                break;
+            }
+            int next = skipSpaces(text, i);
+            if (next == i) {
+                return -1;
+            }
+            i = next;
+            wordStart = wordEnd + 1;
+        }
+        if (i < text.length() && isWordChar(text.charAt(i))) {
+            return -1;
+        }
+        // t.offset、t. limit 中的单词是列名，不是关键字；匹配成功后才回看，不匹配的位置没有额外开销
+        int before = pos - 1;
+        while (before >= 0 && Character.isWhitespace(text.charAt(before))) {
+            before--;
+        }
+        if (before >= 0 && text.charAt(before) == '.') {
+            return -1;
+        }
+        return i;
+    }
+
+    /**
+     * 查找顶层关键字
+     * @return 关键字起始位置，找不到返回-1
+     */
+    static int indexOfKeyword(String text, String keyword, int from) {
+        return indexOfKeyword(text, keyword, from, text.length());
+    }
+
+    // 只在[from, to)范围内查找，不需要截取子串
+    static int indexOfKeyword(String text, String keyword, int from, int to) {
+        int depth = 0;
+        for (int i = from; i < to; i++) {
+            char c = text.charAt(i);
+            if (isLexicalStart(c)) {
+                i = skipLexical(text, i);
+            } else if (c == '(') {
+                depth++;
+            } else if (c == ')') {
+                depth--;
+            } else if (depth == 0 && matchKeyword(text, i, keyword) != -1) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 一次扫描查找多个顶层关键字
+     * @return 每个关键字第一次出现的起始位置，找不到为-1
+     */
+    static int[] indexOfKeywords(String text, String[] keywords) {
+        return indexOfKeywords(text, keywords, 0, text.length());
+    }
+
+    static int[] indexOfKeywords(String text, String[] keywords, int from, int to) {
+        int[] positions = new int[keywords.length];
+        Arrays.fill(positions, -1);
+        int remaining = keywords.length;
+        int depth = 0;
+        for (int i = from; i < to && remaining > 0; i++) {
+            char c = text.charAt(i);
+            if (isLexicalStart(c)) {
+                i = skipLexical(text, i);
+            } else if (c == '(') {
+                depth++;
+            } else if (c == ')') {
+                depth--;
+            } else if (depth == 0 && Character.isLetter(c) && (i == from || !isWordChar(text.charAt(i - 1)))) {
+                for (int k = 0; k < keywords.length; k++) {
+                    if (positions[k] == -1 && matchKeyword(text, i, keywords[k]) != -1) {
+                        positions[k] = i;
+                        remaining--;
+                        break;
+                    }
+                }
+            }
+        }
+        return positions;
+    }
+
+    /**
+     * 查找[from, to)范围内最先出现的顶层关键字，同一位置匹配多个时取数组中靠前的
+     * @return 起始位置，都找不到返回-1
+     */
+    static int indexOfAnyKeyword(String text, String[] keywords, int from, int to) {
+        int depth = 0;
+        for (int i = from; i < to; i++) {
+            char c = text.charAt(i);
+            if (isLexicalStart(c)) {
+                i = skipLexical(text, i);
+            } else if (c == '(') {
+                depth++;
+            } else if (c == ')') {
+                depth--;
+            } else if (depth == 0 && Character.isLetter(c) && (i == from || !isWordChar(text.charAt(i - 1)))) {
+                for (String keyword : keywords) {
+                    if (matchKeyword(text, i, keyword) != -1) {
+                        return i;
+                    }
+                }
+            }
+        }
+        return -1;
+    }
+
+    // 按顶层分隔符拆分，括号和引号内的分隔符不拆
+    static List<String> splitTopLevel(String text, char separator) {
+        List<String> parts = new ArrayList<>();
+        for (SqlSpan span : splitTopLevel(text, separator, 0, text.length())) {
+            parts.add(span.toString());
+        }
+        return parts;
+    }
+
+    // 拆分[from, to)范围，返回去掉首尾空白的片段，不复制文本
+    static List<SqlSpan> splitTopLevel(String text, char separator, int from, int to) {
+        List<SqlSpan> parts = new ArrayList<>();
+        int depth = 0;
+        int start = from;
+        for (int i = from; i < to; i++) {
+            char c = text.charAt(i);
+            if (isLexicalStart(c)) {
+                i = skipLexical(text, i);
+            } else if (c == '(') {
+                depth++;
+            } else if (c == ')') {
+                depth--;
+            } else if (depth == 0 && c == separator) {
+                parts.add(new SqlSpan(text, start, i).trim());
+                start = i + 1;
+            }
+        }
+        parts.add(new SqlSpan(text, start, to).trim());
+        return parts;
+    }
+}
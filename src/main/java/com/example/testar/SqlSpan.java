@@ -0,0 +1,113 @@
+package com.example.testar;
+
+import java.io.IOException;
+
+/**
+ * 原始SQL中的一段文本，只保存起止位置，不复制字符
+ * 解析器在片段上定位子句、子查询和集合运算分支，只有需要改写或单独保存的部分才生成字符串
+ * equals/hashCode按内容比较，可以直接作为解析缓存的键
+ */
+final class SqlSpan implements CharSequence {
+
+    private final String source;
+    private final int start;
+    private final int end;
+    private int hash;
+    // toString的结果，第一次调用时生成
+    private String text;
+
+    SqlSpan(String source, int start, int end) {
+        if (start < 0 || end > source.length() || start > end) {
+            throw new IndexOutOfBoundsException("Span [" + start + ", " + end + ") out of range " + source.length());
+        }
+        this.source = source;
+        this.start = start;
+        this.end = end;
+    }
+
+    static SqlSpan of(String sql) {
+        return new SqlSpan(sql, 0, sql.length());
+    }
+
+    // 所在的完整SQL
+    String getSource() {
+        return source;
+    }
+
+    int getStart() {
+        return start;
+    }
+
+    int getEnd() {
+        return end;
+    }
+
+    public boolean isEmpty() {
+        return start == end;
+    }
+
+    // 去掉首尾空白，不复制
+    SqlSpan trim() {
+        int s = start;
+        int e = end;
+        while (s < e && Character.isWhitespace(source.charAt(s))) {
+            s++;
+        }
+        while (e > s && Character.isWhitespace(source.charAt(e - 1))) {
+            e--;
+        }
+        return s == start && e == end ? this : new SqlSpan(source, s, e);
+    }
+
+    // 直接从完整SQL复制到out，不生成子串
+    void appendTo(Appendable out) throws IOException {
+        out.append(source, start, end);
+    }
+
+    @Override
+    public int length() {
+        return end - start;
+    }
+
+    @Override
+    public char charAt(int index) {
+        return source.charAt(start + index);
+    }
+
+    @Override
+    public SqlSpan subSequence(int from, int to) {
+        return new SqlSpan(source, start + from, start + to);
+    }
+
+    @Override
+    public String toString() {
+        if (text == null) {
+            text = source.substring(start, end);
+        }
+        return text;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof SqlSpan)) {
+            return false;
+        }
+        SqlSpan other = (SqlSpan) o;
+        return length() == other.length() && source.regionMatches(start, other.source, other.start, length());
+    }
+
+    @Override
+    public int hashCode() {
+        int h = hash;
+        if (h == 0) {
+            for (int i = start; i < end; i++) {
+                h = 31 * h + source.charAt(i);
+            }
+            hash = h;
+        }
+        return h;
+    }
+}
@@ -0,0 +1,80 @@
+package com.example.testar;
+
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * SQL转换接口
+ * POST /sql/transform?naming=camel_case&aliases=true&map=t_user:sys_user  请求体为SQL文本，返回转换后的SQL
+ * POST /sql/where  请求体为RestBody的JSON，返回WHERE子句和分页
+ * 每个请求的CPU开销很小，开启 spring.threads.virtual.enabled 后在虚拟线程上处理；
+ * 转换不使用ThreadLocal缓冲，SqlFactory按请求创建，转换结果直接写入响应，客户端读得慢时只挂起虚拟线程
+ */
+@RestController
+@RequestMapping("/sql")
+public class SqlTransformController {
+
+    @PostMapping(value = "/transform", consumes = MediaType.TEXT_PLAIN_VALUE, produces = MediaType.TEXT_PLAIN_VALUE)
+    public void transform(@RequestBody String sql,
+                          @RequestParam(name = "naming", defaultValue = "none") String naming,
+                          @RequestParam(name = "aliases", defaultValue = "false") boolean aliases,
+                          @RequestParam(name = "map", required = false) List<String> map,
+                          HttpServletResponse response) throws IOException {
+        SqlFactory factory = new SqlFactory();
+        factory.fromSql(sql);
+        factory.rewrite(plan(naming, aliases, map));
+        response.setContentType(MediaType.TEXT_PLAIN_VALUE);
+        response.setCharacterEncoding("UTF-8");
+        factory.writeSql(response.getWriter());
+    }
+
+    @PostMapping(value = "/where", produces = MediaType.TEXT_PLAIN_VALUE)
+    public String where(@RequestBody RestBody restBody) {
+        return RestBodyToSqlUtils.trans(restBody);
+    }
+
+    /**
+     * 由请求参数组成改写计划
+     * @param naming 列名转换：none、camel_case、underscore
+     * @param aliases 是否为查询列添加驼峰别名
+     * @param mappings 表名映射，格式为 旧表名:新表名
+     */
+    private static SqlRewritePlan plan(String naming, boolean aliases, List<String> mappings) {
+        SqlRewritePlan.Builder plan = SqlRewritePlan.builder();
+        switch (naming.toLowerCase()) {
+            case "none":
+                break;
+            case "camel_case":
+                plan.underscoreToCamelCase();
+                break;
+            case "underscore":
+                plan.camelCaseToUnderscore();
+                break;
+            default:
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Unknown naming: " + naming);
+        }
+        if (aliases) {
+            plan.addCamelCaseAliases();
+        }
+        if (mappings != null) {
+            for (String mapping : mappings) {
+                String[] parts = mapping.split(":", 2);
+                if (parts.length != 2 || parts[0].isEmpty() || parts[1].isEmpty()) {
+                    throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid table mapping: " + mapping);
+                }
+                plan.mapTable(parts[0], parts[1]);
+            }
+        }
+        return plan.build();
+    }
+}
@@ -0,0 +1,41 @@
+package com.example.testar;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR事件：SqlFactory的一个转换阶段（表名映射、字段转换、别名、改写计划、输出）
+ */
+@Name("com.example.testar.SqlTransform")
+@Label("SQL Transform")
+@Category({"SQL Transform"})
+@Description("SqlFactory的一个转换阶段")
+@StackTrace(false)
+class SqlTransformEvent extends Event {
+
+    private static final EventType TYPE = EventType.getEventType(SqlTransformEvent.class);
+
+    @Label("Phase")
+    @Description("table_mapping、to_camel_case、to_underscore、camel_case_alias、rewrite、render")
+    String phase;
+
+    @Label("Statement Type")
+    String statementType;
+
+    @Label("Input Length")
+    @Description("原始SQL长度（字符）")
+    int inputLength;
+
+    @Label("Output Length")
+    @Description("输出的SQL长度（字符），只有render阶段有值，其他阶段为-1")
+    int outputLength;
+
+    static boolean isRecording() {
+        return TYPE.isEnabled();
+    }
+}
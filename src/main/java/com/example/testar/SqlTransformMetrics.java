@@ -0,0 +1,241 @@
+package com.example.testar;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SQL转换的运行指标，记录到 {@link Metrics#globalRegistry}
+ * Spring Boot 会把Actuator的注册表（包括Prometheus）加入全局注册表，静态工具类不需要注入即可上报；
+ * 没有任何注册表时（如直接运行main）不计时、不计算指纹，开销只有一次判断
+ *
+ * 指标：
+ * sql.transform.phase       SqlFactory各阶段耗时（带百分位直方图），标签 phase、type
+ * sql.transform.shape       按SQL指纹累计的耗时（不带直方图），标签 shape
+ * sql.transform.sql.size    解析的SQL长度（字符），标签 type
+ * sql.transform.parse.errors 解析失败或不支持的语句数，标签 type、status
+ * sql.transform.scope.cache 子查询解析缓存命中/未命中次数，标签 result
+ * rest.body.trans           RestBodyToSqlUtils.trans耗时（带百分位直方图）
+ * rest.body.trans.shape     按whereSql形状累计的耗时（不带直方图），标签 shape
+ * rest.body.where.depth     whereSql嵌套深度
+ * rest.body.sql.size        生成的WHERE子句长度（字符）
+ * sql.file.stage.busy       SqlFileTransformer各阶段忙碌时间，标签 stage
+ * sql.file.stage.wait       SqlFileTransformer各阶段在队列上等待的时间，标签 stage
+ * sql.file.stage.bytes      SqlFileTransformer各阶段处理的输入字节数，标签 stage
+ *
+ * 指纹标签的取值最多MAX_SHAPES+1个，每个取值的直方图有几十个桶，因此只在不带指纹的计时器上发布直方图；
+ * 热路径上用到的计量器按标签缓存，不在每次记录时重新构建和查找注册表
+ */
+final class SqlTransformMetrics {
+
+    static final String PHASE_PARSE = "parse";
+    static final String PHASE_TABLE_MAPPING = "table_mapping";
+    static final String PHASE_TO_CAMEL_CASE = "to_camel_case";
+    static final String PHASE_TO_UNDERSCORE = "to_underscore";
+    static final String PHASE_CAMEL_CASE_ALIAS = "camel_case_alias";
+    static final String PHASE_REWRITE = "rewrite";
+    static final String PHASE_RENDER = "render";
+
+    // 未启用时start()的返回值
+    static final long DISABLED = Long.MIN_VALUE;
+
+    // 指纹作为标签，超过上限的新指纹归为other，避免时间序列无限增长
+    private static final int MAX_SHAPES = 256;
+    private static final String OTHER_SHAPE = "other";
+    private static final Set<String> shapes = ConcurrentHashMap.newKeySet();
+
+    private static final MeterRegistry registry = Metrics.globalRegistry;
+    private static final Counter scopeCacheHits = Counter.builder("sql.transform.scope.cache")
+            .tag("result", "hit").register(registry);
+    private static final Counter scopeCacheMisses = Counter.builder("sql.transform.scope.cache")
+            .tag("result", "miss").register(registry);
+    private static final Timer transTimer = Timer.builder("rest.body.trans")
+            .publishPercentileHistogram().register(registry);
+    private static final DistributionSummary whereDepth = DistributionSummary.builder("rest.body.where.depth")
+            .register(registry);
+    private static final DistributionSummary transSqlSize = DistributionSummary.builder("rest.body.sql.size")
+            .baseUnit("chars").publishPercentileHistogram().register(registry);
+
+    // 按标签缓存的计量器，键为标签值用 | 连接
+    private static final Map<String, Timer> phaseTimers = new ConcurrentHashMap<>();
+    private static final Map<String, Timer> shapeTimers = new ConcurrentHashMap<>();
+    private static final Map<String, Timer> transShapeTimers = new ConcurrentHashMap<>();
+    private static final Map<String, DistributionSummary> sqlSizes = new ConcurrentHashMap<>();
+    private static final Map<String, Counter> parseErrors = new ConcurrentHashMap<>();
+
+    private SqlTransformMetrics() {
+    }
+
+    static boolean isEnabled() {
+        return !Metrics.globalRegistry.getRegistries().isEmpty();
+    }
+
+    // 开始计时，未启用时返回DISABLED
+    static long start() {
+        return isEnabled() ? System.nanoTime() : DISABLED;
+    }
+
+    static void recordPhase(String phase, String type, String shape, long elapsedNanos) {
+        String statementType = type == null ? "UNSUPPORTED" : type;
+        phaseTimers.computeIfAbsent(phase + '|' + statementType, key -> Timer.builder("sql.transform.phase")
+                        .tag("phase", phase)
+                        .tag("type", statementType)
+                        .publishPercentileHistogram()
+                        .register(registry))
+                .record(elapsedNanos, TimeUnit.NANOSECONDS);
+        shapeTimers.computeIfAbsent(boundedShape(shape), key -> Timer.builder("sql.transform.shape")
+                        .tag("shape", key)
+                        .register(registry))
+                .record(elapsedNanos, TimeUnit.NANOSECONDS);
+    }
+
+    static void recordParse(ParseResult result, String shape, int sqlLength, int scopeHits, int scopeMisses,
+                            long elapsedNanos) {
+        String type = result.getStatementType() == null ? "UNSUPPORTED" : result.getStatementType();
+        recordPhase(PHASE_PARSE, type, shape, elapsedNanos);
+        sqlSizes.computeIfAbsent(type, key -> DistributionSummary.builder("sql.transform.sql.size")
+                        .baseUnit("chars")
+                        .tag("type", key)
+                        .publishPercentileHistogram()
+                        .register(registry))
+                .record(sqlLength);
+        if (!result.isSuccess()) {
+            String status = result.getStatus().name();
+            parseErrors.computeIfAbsent(type + '|' + status, key -> Counter.builder("sql.transform.parse.errors")
+                            .tag("type", type)
+                            .tag("status", status)
+                            .register(registry))
+                    .increment();
+        }
+        scopeCacheHits.increment(scopeHits);
+        scopeCacheMisses.increment(scopeMisses);
+    }
+
+    static void recordTrans(List<Map<String, Object>> whereSql, int sqlLength, long start) {
+        if (start == DISABLED) {
+            return;
+        }
+        long elapsed = System.nanoTime() - start;
+        int[] depth = new int[1];
+        int hash = whereSql == null ? 0 : whereShape(whereSql, 1, depth, 0x811C9DC5);
+        transTimer.record(elapsed, TimeUnit.NANOSECONDS);
+        String shape = boundedShape(Integer.toHexString(hash));
+        transShapeTimers.computeIfAbsent(shape, key -> Timer.builder("rest.body.trans.shape")
+                        .tag("shape", key)
+                        .register(registry))
+                .record(elapsed, TimeUnit.NANOSECONDS);
+        whereDepth.record(depth[0]);
+        transSqlSize.record(sqlLength);
+    }
+
+    // 一次文件转换结束后上报各阶段的合计
+    static void recordStage(String stage, long bytes, long busyNanos, long waitNanos) {
+        if (!isEnabled()) {
+            return;
+        }
+        Timer.builder("sql.file.stage.busy").tag("stage", stage).register(registry)
+                .record(busyNanos, TimeUnit.NANOSECONDS);
+        Timer.builder("sql.file.stage.wait").tag("stage", stage).register(registry)
+                .record(waitNanos, TimeUnit.NANOSECONDS);
+        Counter.builder("sql.file.stage.bytes").baseUnit("bytes").tag("stage", stage).register(registry)
+                .increment(bytes);
+    }
+
+    /**
+     * 上报总数缓存的命中、未命中次数和条目数
+     * @param cache 总数缓存
+     * @param name 缓存名称，作为cache标签
+     */
+    static void monitor(CountCache cache, String name) {
+        FunctionCounter.builder("count.cache.requests", cache, CountCache::getHitCount)
+                .tag("cache", name).tag("result", "hit").register(registry);
+        FunctionCounter.builder("count.cache.requests", cache, CountCache::getMissCount)
+                .tag("cache", name).tag("result", "miss").register(registry);
+        Gauge.builder("count.cache.size", cache, CountCache::size)
+                .tag("cache", name).register(registry);
+    }
+
+    /**
+     * SQL形状指纹：字符串和数字常量替换为?，空白合并，忽略大小写后计算哈希
+     * 只有常量不同的SQL指纹相同，调用前先判断isEnabled
+     */
+    static String sqlShape(String sql) {
+        int hash = 0x811C9DC5;
+        boolean space = false;
+        int length = sql.length();
+        for (int i = 0; i < length; i++) {
+            char c = sql.charAt(i);
+            if (Character.isWhitespace(c)) {
+                space = true;
+                continue;
+            }
+            if (space) {
+                hash = mix(hash, ' ');
+                space = false;
+            }
+            if (c == '\'') {
+                i = SqlScanner.skipQuoted(sql, i);
+                hash = mix(hash, '?');
+            } else if (Character.isDigit(c) && (i == 0 || !SqlScanner.isWordChar(sql.charAt(i - 1)))) {
+                while (i + 1 < length && (Character.isDigit(sql.charAt(i + 1)) || sql.charAt(i + 1) == '.')) {
+                    i++;
+                }
+                hash = mix(hash, '?');
+            } else {
+                hash = mix(hash, Character.toLowerCase(c));
+            }
+        }
+        return Integer.toHexString(hash);
+    }
+
+    // whereSql的形状：键名和嵌套结构，不含值
+    private static int whereShape(Object node, int level, int[] depth, int hash) {
+        if (node instanceof Map) {
+            depth[0] = Math.max(depth[0], level);
+            hash = mix(hash, '{');
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) node).entrySet()) {
+                String key = String.valueOf(entry.getKey());
+                for (int i = 0; i < key.length(); i++) {
+                    hash = mix(hash, key.charAt(i));
+                }
+                hash = whereShape(entry.getValue(), level + 1, depth, mix(hash, ':'));
+            }
+            return mix(hash, '}');
+        } else if (node instanceof List) {
+            hash = mix(hash, '[');
+            for (Object item : (List<?>) node) {
+                hash = whereShape(item, level, depth, hash);
+            }
+            return mix(hash, ']');
+        }
+        return mix(hash, '?');
+    }
+
+    private static int mix(int hash, char c) {
+        return (hash ^ c) * 0x01000193;
+    }
+
+    private static String boundedShape(String shape) {
+        if (shape == null) {
+            return OTHER_SHAPE;
+        }
+        if (shapes.contains(shape)) {
+            return shape;
+        }
+        if (shapes.size() < MAX_SHAPES) {
+            shapes.add(shape);
+            return shape;
+        }
+        return OTHER_SHAPE;
+    }
+}
@@ -0,0 +1,18 @@
+package com.example.testar;
+
+import org.springframework.aot.hint.BindingReflectionHintsRegistrar;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.RuntimeHintsRegistrar;
+
+/**
+ * AOT和native image需要的反射元数据
+ * RestBody及其嵌套的QueryDTO、Page由Jackson按getter/setter绑定，native image中必须预先登记
+ */
+class SqlTransformRuntimeHints implements RuntimeHintsRegistrar {
+
+    @Override
+    public void registerHints(RuntimeHints hints, ClassLoader classLoader) {
+        new BindingReflectionHintsRegistrar().registerReflectionHints(hints.reflection(),
+                RestBody.class, QueryDTO.class, Page.class);
+    }
+}
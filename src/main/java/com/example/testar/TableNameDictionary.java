@@ -0,0 +1,194 @@
+package com.example.testar;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 不可变的表名映射字典，用于一次性加载大量表名映射
+ * 精确映射使用忽略大小写的开放寻址哈希表，查找时不产生临时字符串；
+ * 通配规则（如 t_bgt_* -> bgt.*、*_2024 -> *_hist）合并编译为一个自动机，见 {@link TableNamePatternMatcher}
+ * 精确映射优先于通配规则
+ */
+public final class TableNameDictionary {
+
+    private final String[] keys;
+    private final String[] values;
+    private final TableNamePatternMatcher ruleMatcher;
+    private final String[] ruleReplacements;
+    private final int size;
+
+    private TableNameDictionary(Builder builder) {
+        // 容量取2的幂，负载因子不超过0.5
+        int capacity = 16;
+        while (capacity < builder.exactMappings.size() * 2) {
+            capacity <<= 1;
+        }
+        keys = new String[capacity];
+        values = new String[capacity];
+
+        // 相同的新表名只保留一份
+        Map<String, String> internedValues = new HashMap<>();
+        for (Map.Entry<String, String> entry : builder.exactMappings.entrySet()) {
+            String key = entry.getKey().toLowerCase().intern();
+            String value = internedValues.computeIfAbsent(entry.getValue(), v -> v);
+            int index = hashIgnoreCase(key) & (capacity - 1);
+            while (keys[index] != null && !keys[index].equals(key)) {
+                index = (index + 1) & (capacity - 1);
+            }
+            keys[index] = key;
+            values[index] = value;
+        }
+
+        ruleMatcher = new TableNamePatternMatcher(new ArrayList<>(builder.rules.keySet()));
+        ruleReplacements = builder.rules.values().toArray(new String[0]);
+        size = builder.exactMappings.size() + builder.rules.size();
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * 查找新表名
+     * @param tableName 原表名，忽略大小写
+     * @return 新表名，没有匹配的映射时返回null
+     */
+    public String lookup(CharSequence tableName) {
+        int mask = keys.length - 1;
+        for (int index = hashIgnoreCase(tableName) & mask; keys[index] != null; index = (index + 1) & mask) {
+            if (equalsIgnoreCase(keys[index], tableName)) {
+                return values[index];
+            }
+        }
+        return lookupRule(tableName);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // 新表名中的*依次替换为原表名中与规则*对应的部分
+    private String lookupRule(CharSequence tableName) {
+        int rule = ruleMatcher.match(tableName);
+        if (rule == -1) {
+            return null;
+        }
+        String replacement = ruleReplacements[rule];
+        if (replacement.indexOf('*') == -1) {
+            return replacement;
+        }
+        int[] captures = ruleMatcher.captures(rule, tableName);
+        StringBuilder result = new StringBuilder(replacement.length() + tableName.length());
+        int star = 0;
+        for (int i = 0; i < replacement.length(); i++) {
+            char c = replacement.charAt(i);
+            if (c == '*') {
+                result.append(tableName, captures[star * 2], captures[star * 2 + 1]);
+                star++;
+            } else {
+                result.append(c);
+            }
+        }
+        return result.toString();
+    }
+
+    private static int hashIgnoreCase(CharSequence text) {
+        int hash = 0;
+        for (int i = 0; i < text.length(); i++) {
+            hash = 31 * hash + Character.toLowerCase(text.charAt(i));
+        }
+        // 打散低位，减少线性探测的聚集
+        return hash ^ (hash >>> 16);
+    }
+
+    private static boolean equalsIgnoreCase(String lowerKey, CharSequence text) {
+        if (lowerKey.length() != text.length()) {
+            return false;
+        }
+        for (int i = 0; i < lowerKey.length(); i++) {
+            if (lowerKey.charAt(i) != Character.toLowerCase(text.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public static class Builder {
+        private final Map<String, String> exactMappings = new LinkedHashMap<>();
+        private final Map<String, String> rules = new LinkedHashMap<>();
+
+        private Builder() {
+        }
+
+        /**
+         * 添加映射，原表名包含*时为通配规则，新表名中的*依次替换为原表名中与规则*对应的部分
+         * @param oldName 原表名或通配规则，如 t_bgt_*、*_2024、olddb.*
+         * @param newName 新表名，如 bgt.*、*_hist，*的个数不能多于通配规则
+         */
+        public Builder put(String oldName, String newName) {
+            String key = oldName.trim();
+            String value = newName.trim();
+            if (key.indexOf('*') != -1) {
+                if (countStars(value) > countStars(key)) {
+                    throw new IllegalArgumentException("Too many * in replacement: " + oldName + " -> " + newName);
+                }
+                rules.put(key.toLowerCase(), value);
+            } else {
+                exactMappings.put(key.toLowerCase(), value);
+            }
+            return this;
+        }
+
+        public Builder putAll(Map<String, String> mappings) {
+            for (Map.Entry<String, String> entry : mappings.entrySet()) {
+                put(entry.getKey(), entry.getValue());
+            }
+            return this;
+        }
+
+        /**
+         * 从文件加载映射，每行一条：原表名=新表名 或 原表名 新表名，#开头的行为注释
+         * @param file 映射文件，UTF-8编码
+         */
+        public Builder load(Path file) throws IOException {
+            try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                String line;
+                int lineNumber = 0;
+                while ((line = reader.readLine()) != null) {
+                    lineNumber++;
+                    line = line.trim();
+                    if (line.isEmpty() || line.startsWith("#")) {
+                        continue;
+                    }
+                    String[] parts = line.split("\\s*=\\s*|\\s+", 2);
+                    if (parts.length != 2 || parts[1].isEmpty()) {
+                        throw new IllegalArgumentException("Invalid mapping at line " + lineNumber + " of " + file + ": " + line);
+                    }
+                    put(parts[0], parts[1]);
+                }
+            }
+            return this;
+        }
+
+        public TableNameDictionary build() {
+            return new TableNameDictionary(this);
+        }
+
+        private static int countStars(String text) {
+            int count = 0;
+            for (int i = 0; i < text.length(); i++) {
+                if (text.charAt(i) == '*') {
+                    count++;
+                }
+            }
+            return count;
+        }
+    }
+}
@@ -0,0 +1,218 @@
+package com.example.testar;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 表名通配规则匹配器：所有规则（如 t_bgt_*、*_2024、olddb.*）合并编译为一个DFA
+ * 查找时每个字符只查一次转移表，耗时与规则数量无关
+ * 规则只支持 * 通配任意长度字符，忽略大小写；多条规则同时匹配时，固定字符多的优先，相同时先添加的优先
+ */
+final class TableNamePatternMatcher {
+
+    private static final char WILDCARD = '*';
+
+    private final char[][] patterns;
+    // 字符分类：规则中出现的字符各占一类，其余字符归为第0类
+    private final int[] asciiClasses = new int[128];
+    private final Map<Character, Integer> otherClasses = new HashMap<>();
+    private final int classCount;
+    // transitions[state * classCount + class]，-1表示无法再匹配任何规则
+    private final int[] transitions;
+    // 每个状态命中的规则，-1表示不是接受状态
+    private final int[] accepts;
+
+    TableNamePatternMatcher(List<String> rules) {
+        patterns = new char[rules.size()][];
+        for (int i = 0; i < rules.size(); i++) {
+            patterns[i] = rules.get(i).toLowerCase().toCharArray();
+        }
+
+        // 每个NFA位置（规则, 模式下标）编号为 offsets[rule] + index
+        int[] offsets = new int[patterns.length + 1];
+        for (int i = 0; i < patterns.length; i++) {
+            offsets[i + 1] = offsets[i] + patterns[i].length + 1;
+        }
+        int[] ruleOf = new int[offsets[patterns.length]];
+        for (int i = 0; i < patterns.length; i++) {
+            Arrays.fill(ruleOf, offsets[i], offsets[i + 1], i);
+        }
+
+        List<Character> classChars = new ArrayList<>();
+        classChars.add(null);
+        for (char[] pattern : patterns) {
+            for (char c : pattern) {
+                if (c != WILDCARD && classOf(c) == 0) {
+                    if (c < 128) {
+                        asciiClasses[c] = classChars.size();
+                    } else {
+                        otherClasses.put(c, classChars.size());
+                    }
+                    classChars.add(c);
+                }
+            }
+        }
+        classCount = classChars.size();
+
+        // 子集构造：DFA状态是NFA位置的集合
+        List<BitSet> states = new ArrayList<>();
+        Map<BitSet, Integer> stateIds = new HashMap<>();
+        BitSet start = new BitSet();
+        for (int i = 0; i < patterns.length; i++) {
+            addPosition(start, offsets, i, 0);
+        }
+        states.add(start);
+        stateIds.put(start, 0);
+
+        List<int[]> rows = new ArrayList<>();
+        for (int s = 0; s < states.size(); s++) {
+            BitSet state = states.get(s);
+            int[] row = new int[classCount];
+            for (int cls = 0; cls < classCount; cls++) {
+                Character c = classChars.get(cls);
+                BitSet next = new BitSet();
+                for (int pos = state.nextSetBit(0); pos >= 0; pos = state.nextSetBit(pos + 1)) {
+                    int rule = ruleOf[pos];
+                    int index = pos - offsets[rule];
+                    if (index == patterns[rule].length) {
+                        continue;
+                    }
+                    char p = patterns[rule][index];
+                    if (p == WILDCARD) {
+                        addPosition(next, offsets, rule, index);
+                    } else if (c != null && p == c) {
+                        addPosition(next, offsets, rule, index + 1);
+                    }
+                }
+                if (next.isEmpty()) {
+                    row[cls] = -1;
+                } else {
+                    Integer id = stateIds.get(next);
+                    if (id == null) {
+                        id = states.size();
+                        states.add(next);
+                        stateIds.put(next, id);
+                    }
+                    row[cls] = id;
+                }
+            }
+            rows.add(row);
+        }
+
+        transitions = new int[states.size() * classCount];
+        accepts = new int[states.size()];
+        for (int s = 0; s < states.size(); s++) {
+            System.arraycopy(rows.get(s), 0, transitions, s * classCount, classCount);
+            accepts[s] = bestRule(states.get(s), offsets);
+        }
+    }
+
+    /**
+     * 匹配表名
+     * @return 命中的规则下标，没有规则匹配时返回-1
+     */
+    int match(CharSequence name) {
+        if (patterns.length == 0) {
+            return -1;
+        }
+        int state = 0;
+        for (int i = 0; i < name.length(); i++) {
+            state = transitions[state * classCount + classOf(Character.toLowerCase(name.charAt(i)))];
+            if (state == -1) {
+                return -1;
+            }
+        }
+        return accepts[state];
+    }
+
+    /**
+     * 按规则中的*依次截取表名的对应部分，调用前需确认规则已匹配
+     * @return 每个*对应的起止位置，依次为 start0, end0, start1, end1 ...
+     */
+    int[] captures(int rule, CharSequence name) {
+        char[] pattern = patterns[rule];
+        int[] starOrder = new int[pattern.length];
+        int stars = 0;
+        for (int i = 0; i < pattern.length; i++) {
+            if (pattern[i] == WILDCARD) {
+                starOrder[i] = stars++;
+            }
+        }
+        int[] result = new int[stars * 2];
+
+        // 经典的通配匹配：*先匹配空串，失配时回到最近的*多吞一个字符
+        int p = 0;
+        int t = 0;
+        int lastStar = -1;
+        int lastStarText = -1;
+        while (t < name.length()) {
+            if (p < pattern.length && pattern[p] != WILDCARD
+                    && pattern[p] == Character.toLowerCase(name.charAt(t))) {
+                p++;
+                t++;
+            } else if (p < pattern.length && pattern[p] == WILDCARD) {
+                lastStar = p;
+                lastStarText = t;
+                result[starOrder[p] * 2] = t;
+                result[starOrder[p] * 2 + 1] = t;
+                p++;
+            } else if (lastStar != -1) {
+                p = lastStar + 1;
+                t = ++lastStarText;
+                result[starOrder[lastStar] * 2 + 1] = t;
+            } else {
+                throw new IllegalArgumentException("Rule " + new String(pattern) + " does not match " + name);
+            }
+        }
+        for (; p < pattern.length; p++) {
+            result[starOrder[p] * 2] = name.length();
+            result[starOrder[p] * 2 + 1] = name.length();
+        }
+        return result;
+    }
+
+    private int classOf(char c) {
+        if (c < 128) {
+            return asciiClasses[c];
+        }
+        Integer cls = otherClasses.get(c);
+        return cls == null ? 0 : cls;
+    }
+
+    // 加入NFA位置，遇到*时同时加入*之后的位置（*可以匹配空串）
+    private void addPosition(BitSet state, int[] offsets, int rule, int index) {
+        state.set(offsets[rule] + index);
+        while (index < patterns[rule].length && patterns[rule][index] == WILDCARD) {
+            state.set(offsets[rule] + ++index);
+        }
+    }
+
+    private int bestRule(BitSet state, int[] offsets) {
+        int best = -1;
+        int bestLiterals = -1;
+        for (int rule = 0; rule < patterns.length; rule++) {
+            if (state.get(offsets[rule] + patterns[rule].length)) {
+                int literals = literalCount(patterns[rule]);
+                if (literals > bestLiterals) {
+                    best = rule;
+                    bestLiterals = literals;
+                }
+            }
+        }
+        return best;
+    }
+
+    private static int literalCount(char[] pattern) {
+        int count = 0;
+        for (char c : pattern) {
+            if (c != WILDCARD) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
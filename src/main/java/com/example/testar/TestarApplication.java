@@ -1,13 +1,24 @@
 package com.example.testar;
 
+import org.springframework.boot.Banner;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.context.annotation.ImportRuntimeHints;
 
 @SpringBootApplication
+@ImportRuntimeHints(SqlTransformRuntimeHints.class)
 public class TestarApplication {
 
     public static void main(String[] args) {
-        SpringApplication.run(TestarApplication.class, args);
+        SpringApplication application = new SpringApplication(TestarApplication.class);
+        // 精简启动（-Dsql.transform.lean=true，native profile在AOT处理时开启）：
+        // 不扫描示例控制器，不打印横幅
+        if (Boolean.getBoolean("sql.transform.lean")) {
+            application.addInitializers(context -> context.getBeanFactory()
+                    .registerSingleton(DemoExcludeFilter.class.getName(), new DemoExcludeFilter()));
+            application.setBannerMode(Banner.Mode.OFF);
+        }
+        application.run(args);
     }
 
 }
@@ -0,0 +1,38 @@
+package com.example.testar;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR事件：RestBodyToSqlUtils.trans 把请求体渲染为WHERE子句和分页
+ */
+@Name("com.example.testar.WhereRender")
+@Label("WHERE Render")
+@Category({"SQL Transform"})
+@Description("RestBodyToSqlUtils.trans渲染WHERE子句")
+@StackTrace(false)
+class WhereRenderEvent extends Event {
+
+    private static final EventType TYPE = EventType.getEventType(WhereRenderEvent.class);
+
+    @Label("Table")
+    @Description("表结构中的表名，没有表结构时为空")
+    String tableName;
+
+    @Label("Condition Count")
+    @Description("whereSql中顶层条件的个数")
+    int conditionCount;
+
+    @Label("Output Length")
+    @Description("生成的SQL长度（字符）")
+    int outputLength;
+
+    static boolean isRecording() {
+        return TYPE.isEnabled();
+    }
+}